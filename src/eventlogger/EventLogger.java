@@ -1,5 +1,6 @@
 package eventlogger;
 
+import eventlogger.cli.CommandLineRunner;
 import eventlogger.model.Event;
 import eventlogger.service.EventService;
 import eventlogger.util.FileManager;
@@ -21,6 +22,11 @@ public class EventLogger {
     private static final String SEPARATOR_CHAR = "—";
 
     public static void main(String[] args) {
+        // Неінтерактивний режим: команда з аргументів, див. CommandLineRunner
+        if(args.length > 0) {
+            System.exit(CommandLineRunner.run(args));
+        }
+
         {
             System.out.println("╔════════════════════════════════╗");
             System.out.println("║       Event Logger  v1.1       ║");
@@ -36,6 +42,7 @@ public class EventLogger {
         while(continueRunning) continueRunning = showMainMenu();
 
         scanner.close();
+        eventService.close();
         System.out.println("Exiting Event Logger. Goodbye!");
     }
 
@@ -293,7 +300,8 @@ public class EventLogger {
                 return;
             }
 
-            if(eventService.deleteEvent(choice)) {
+            // За ідентифікатором: номер у списку міг зсунутись, якщо файл тим часом змінили
+            if(eventService.deleteEvent(events.get(choice - 1))) {
                 System.out.println("Event deleted successfully!");
             } else {
                 System.err.println("Failed to delete event.");
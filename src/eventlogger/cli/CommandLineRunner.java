@@ -0,0 +1,533 @@
+package eventlogger.cli;
+
+import eventlogger.model.Event;
+import eventlogger.repository.DurabilityMode;
+import eventlogger.repository.EventRepository;
+import eventlogger.server.BatchingEventWriter;
+import eventlogger.server.IngestionServer;
+import eventlogger.service.EventService;
+import eventlogger.service.EventTailPublisher;
+import eventlogger.util.FileManager;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+
+/**
+ * Неінтерактивний режим: виконання однієї команди з аргументів командного рядка.
+ * <p>
+ * Глобальні опції вказуються до команди.
+ * Використання: {@code EventLogger [--data PATH] [--format text|json|csv] [--durability none|batch|event] <command> [options]}
+ * <ul>
+ *   <li>{@code log [description...]} - логує подію; без опису читає описи зі stdin, по одному на рядок</li>
+ *   <li>{@code import [file]} - імпортує рядки у форматі файлу подій з файлу або stdin</li>
+ *   <li>{@code search [--date D | --from D] [--to D]} - пошук за датою або проміжком (dd-MM-yyyy)</li>
+ *   <li>{@code stats} - статистика подій</li>
+ *   <li>{@code get <id>} - подія за ідентифікатором</li>
+ *   <li>{@code delete <id> | --all} - видалення події за ідентифікатором або всіх подій</li>
+ *   <li>{@code compact} - прибирає з файлу порожні та пошкоджені рядки</li>
+ *   <li>{@code migrate} - присвоює ідентифікатори подіям старого формату, не чіпаючи інших рядків</li>
+ *   <li>{@code tail [--from OFFSET --generation N]} - друкує нові події по мірі їх запису у файл</li>
+ *   <li>{@code serve [--port N] [--http-port N]} - приймає події від локальних клієнтів, див. {@link IngestionServer}</li>
+ * </ul>
+ * Потокові дані обробляються пакетами по {@value #BATCH_SIZE} подій, кожен пакет - одне відкриття файлу.
+ */
+public class CommandLineRunner {
+    private static final String DEFAULT_DATA_PATH = "results" + File.separator + "events.txt";
+    private static final int BATCH_SIZE = 1000;
+    private static final int TAIL_REQUEST_SIZE = 256;
+    private static final int DEFAULT_SERVER_PORT = 7070;
+
+    // Коди завершення
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILURE = 1;
+    private static final int EXIT_USAGE = 2;
+
+    private static final String USAGE = """
+            Usage: EventLogger [--data PATH] [--format text|json|csv] [--durability none|batch|event]
+                               <command> [options]
+              log [description...]          log an event (reads descriptions from stdin if omitted)
+              import [file]                 import event lines from a file or stdin
+              search [--date D | --from D] [--to D]
+                                            search events by date or date range (dd-MM-yyyy)
+              stats                         show statistics
+              get <id>                      show the event with the given id
+              delete <id> | --all           delete the event with the given id or all events
+              compact                       remove empty and corrupted lines from the data file
+              migrate                       assign ids to events without one, keeping all other lines
+              tail [--from OFFSET --generation N]
+                                            follow events appended to the data file
+                                            (default: from the current end, 0: from the beginning;
+                                            resume with nextOffset and generation from json/csv output)
+              serve [--port N] [--http-port N]
+                                            accept events over TCP (default port 7070) and optionally HTTP
+            Durability: none - no fsync, batch - fsync per write call (default), event - fsync per event.
+            Without arguments the interactive menu is started.""";
+
+    private final EventService eventService;
+    private final OutputFormat format;
+    private final BufferedReader in;
+    private final PrintStream out;
+    private final PrintStream err;
+
+    private CommandLineRunner(EventService eventService, OutputFormat format,
+                              BufferedReader in, PrintStream out, PrintStream err) {
+        this.eventService = eventService;
+        this.format = format;
+        this.in = in;
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Розбирає аргументи та виконує команду.
+     * @param args Аргументи командного рядка.
+     * @return Код завершення процесу.
+     */
+    public static int run(String[] args) {
+        String dataPath = DEFAULT_DATA_PATH;
+        OutputFormat format = OutputFormat.TEXT;
+        DurabilityMode durability = DurabilityMode.BATCH;
+
+        // Глобальні опції - лише до команди; все після неї належить команді (напр. опис події)
+        int i = 0;
+        for(; i < args.length && args[i].startsWith("-"); i++) {
+            switch(args[i]) {
+                case "--data" -> {
+                    if(++i >= args.length) return usage("Missing value for --data");
+                    dataPath = args[i];
+                }
+                case "--format" -> {
+                    if(++i >= args.length) return usage("Missing value for --format");
+                    format = OutputFormat.fromName(args[i]);
+                    if(format == null) return usage("Unknown format: " + args[i]);
+                }
+                case "--durability" -> {
+                    if(++i >= args.length) return usage("Missing value for --durability");
+                    durability = DurabilityMode.fromName(args[i]);
+                    if(durability == null) return usage("Unknown durability mode: " + args[i]);
+                }
+                case "-h", "--help" -> {
+                    System.out.println(USAGE);
+                    return EXIT_OK;
+                }
+                default -> {
+                    return usage("Unknown option: " + args[i]);
+                }
+            }
+        }
+
+        List<String> rest = List.of(args).subList(i, args.length);
+
+        if(!rest.isEmpty() && rest.getFirst().equals("help")) {
+            System.out.println(USAGE);
+            return EXIT_OK;
+        }
+
+        if(rest.isEmpty()) return usage("Missing command");
+
+        EventService eventService;
+        try {
+            File dataFile = new File(dataPath);
+            String directory = dataFile.getAbsoluteFile().getParent();
+            String filePath = FileManager.fileExistenceChecker(directory, dataFile.getName(), System.err);
+
+            eventService = new EventService(new EventRepository(filePath, durability));
+        } catch(RuntimeException e) {
+            System.err.println("Initialization error: " + e.getMessage());
+            return EXIT_FAILURE;
+        }
+
+        // Вивід у тому ж кодуванні, що й ввід: консоль з іншим кодуванням за замовчуванням
+        // (напр. Windows) інакше псує не-ASCII символи, у тому числі в JSON/CSV
+        BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        PrintStream stdout = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), true, StandardCharsets.UTF_8);
+        PrintStream stderr = new PrintStream(new FileOutputStream(FileDescriptor.err), true, StandardCharsets.UTF_8);
+        CommandLineRunner runner = new CommandLineRunner(eventService, format, stdin, stdout, stderr);
+
+        try(eventService) {
+            return runner.execute(rest.getFirst(), rest.subList(1, rest.size()));
+        } finally {
+            stdout.flush();
+        }
+    }
+
+    /**
+     * Виконує команду з її аргументами.
+     * @param command Назва команди.
+     * @param options Аргументи команди.
+     * @return Код завершення.
+     */
+    private int execute(String command, List<String> options) {
+        try {
+            return switch(command) {
+                case "log" -> log(options);
+                case "import" -> importEvents(options);
+                case "search" -> search(options);
+                case "stats" -> stats();
+                case "get" -> get(options);
+                case "delete" -> delete(options);
+                case "compact" -> compact();
+                case "migrate" -> migrate();
+                case "tail" -> tail(options);
+                case "serve" -> serve(options);
+                default -> usage("Unknown command: " + command);
+            };
+        } catch(IOException e) {
+            err.println("I/O error: " + e.getMessage());
+            return EXIT_FAILURE;
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EXIT_FAILURE;
+        }
+    }
+
+    /*
+     * COMMANDS
+     * */
+
+    private int log(List<String> options) throws IOException {
+        // Опис переданий аргументами - одна подія
+        if(!options.isEmpty()) {
+            if(!eventService.logNewEvent(String.join(" ", options))) {
+                err.println("Failed to log event.");
+                return EXIT_FAILURE;
+            }
+
+            format.printResult(out, "log", 1);
+            return EXIT_OK;
+        }
+
+        // Інакше - пакетно зі stdin
+        int total = 0;
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        String line;
+
+        while((line = in.readLine()) != null) {
+            batch.add(line);
+
+            if(batch.size() == BATCH_SIZE) {
+                int saved = eventService.logNewEvents(batch);
+                if(saved < 0) return failedAfter("log", total);
+
+                total += saved;
+                batch.clear();
+            }
+        }
+
+        int saved = eventService.logNewEvents(batch);
+        if(saved < 0) return failedAfter("log", total);
+
+        format.printResult(out, "log", total + saved);
+        return EXIT_OK;
+    }
+
+    private int importEvents(List<String> options) throws IOException {
+        if(options.size() > 1) return usage("import accepts at most one file");
+
+        BufferedReader reader = options.isEmpty()
+                ? in
+                : new BufferedReader(new InputStreamReader(new FileInputStream(options.getFirst()), StandardCharsets.UTF_8));
+
+        try(reader) {
+            int total = 0;
+            int skipped = 0;
+            List<Event> batch = new ArrayList<>(BATCH_SIZE);
+            String line;
+
+            while((line = reader.readLine()) != null) {
+                Event event = Event.fromFileString(line);
+
+                if(event == null) {
+                    if(!line.isBlank()) skipped++;
+                    continue;
+                }
+
+                batch.add(event);
+
+                if(batch.size() == BATCH_SIZE) {
+                    int saved = eventService.importEvents(batch);
+                    if(saved < 0) return failedAfter("import", total);
+
+                    total += saved;
+                    batch.clear();
+                }
+            }
+
+            int saved = eventService.importEvents(batch);
+            if(saved < 0) return failedAfter("import", total);
+
+            if(skipped > 0) err.println("Skipped " + skipped + " unparseable line(s).");
+
+            format.printResult(out, "import", total + saved);
+            return EXIT_OK;
+        }
+    }
+
+    private int search(List<String> options) {
+        String date = null;
+        String from = null;
+        String to = null;
+
+        for(int i = 0; i < options.size(); i++) {
+            String option = options.get(i);
+
+            if(i + 1 >= options.size()) return usage("Missing value for " + option);
+
+            switch(option) {
+                case "--date" -> date = options.get(++i);
+                case "--from" -> from = options.get(++i);
+                case "--to" -> to = options.get(++i);
+                default -> {
+                    return usage("Unknown search option: " + option);
+                }
+            }
+        }
+
+        if(date != null && (from != null || to != null)) return usage("--date cannot be combined with --from/--to");
+
+        List<Event> events = date != null
+                ? eventService.searchEventsByDate(date)
+                : eventService.searchEventsBetween(from, to);
+
+        if(events == null) {
+            err.println("Invalid date format. Please use dd-MM-yyyy.");
+            return EXIT_USAGE;
+        }
+
+        format.printEvents(out, events);
+        return EXIT_OK;
+    }
+
+    private int stats() {
+        format.printStatistics(out, eventService.getStatistics());
+        return EXIT_OK;
+    }
+
+    private int get(List<String> options) {
+        if(options.size() != 1) return usage("get expects an event id");
+
+        try {
+            Event event = eventService.getEventById(Long.parseLong(options.getFirst()));
+
+            if(event == null) {
+                return notFound();
+            }
+
+            format.printEvents(out, List.of(event));
+            return EXIT_OK;
+        } catch(NumberFormatException e) {
+            return usage("Invalid event id: " + options.getFirst());
+        }
+    }
+
+    private int delete(List<String> options) {
+        if(options.size() != 1) return usage("delete expects an event id or --all");
+
+        if(options.getFirst().equals("--all")) {
+            int count = eventService.getStatistics().totalCount();
+
+            if(!eventService.deleteAllEvents()) {
+                err.println("Failed to delete events.");
+                return EXIT_FAILURE;
+            }
+
+            format.printResult(out, "delete", count);
+            return EXIT_OK;
+        }
+
+        try {
+            if(!eventService.deleteEventById(Long.parseLong(options.getFirst()))) {
+                return notFound();
+            }
+
+            format.printResult(out, "delete", 1);
+            return EXIT_OK;
+        } catch(NumberFormatException e) {
+            return usage("Invalid event id: " + options.getFirst());
+        }
+    }
+
+    private int notFound() {
+        err.println("Event not found.");
+        if(eventService.hasLegacyEvents()) err.println("Some events have no id yet; run 'migrate' to assign them.");
+
+        return EXIT_FAILURE;
+    }
+
+    private int migrate() {
+        EventRepository.Migration migration = eventService.migrate();
+
+        if(migration == null) {
+            err.println("Failed to migrate data file.");
+            return EXIT_FAILURE;
+        }
+
+        if(migration.skipped() > 0) {
+            err.println(migration.skipped() + " event(s) left without an id: no free id between their neighbours.");
+        }
+
+        format.printResult(out, "migrate", migration.assigned());
+        return EXIT_OK;
+    }
+
+    private int compact() {
+        int count = eventService.compact();
+
+        if(count < 0) {
+            err.println("Failed to compact data file.");
+            return EXIT_FAILURE;
+        }
+
+        if(eventService.hasLegacyEvents()) {
+            err.println("Some events still have no id: no free id between their neighbours.");
+        }
+
+        format.printResult(out, "compact", count);
+        return EXIT_OK;
+    }
+
+    private int tail(List<String> options) throws InterruptedException {
+        // Покоління - до зміщення: перезапис між ними дасть помилку, а не хибне зміщення
+        long generation = eventService.currentGeneration();
+        long from = eventService.currentOffset();
+        boolean hasGeneration = false;
+
+        for(int i = 0; i < options.size(); i++) {
+            String option = options.get(i);
+
+            if(i + 1 >= options.size()) return usage("Missing value for " + option);
+
+            try {
+                switch(option) {
+                    case "--from" -> from = Long.parseLong(options.get(++i));
+                    case "--generation" -> {
+                        generation = Long.parseLong(options.get(++i));
+                        hasGeneration = true;
+                    }
+                    default -> {
+                        return usage("Unknown tail option: " + option);
+                    }
+                }
+            } catch(NumberFormatException e) {
+                return usage("Invalid value for " + option + ": " + options.get(i));
+            }
+        }
+
+        if(from < 0) return usage("Invalid offset: " + from);
+
+        // Збережене зміщення має сенс лише в тому файлі, в якому його отримано
+        if(options.contains("--from") && from > 0 && !hasGeneration) {
+            return usage("tail --from OFFSET requires --generation N (both are printed by tail in json/csv)");
+        }
+
+        CountDownLatch finished = new CountDownLatch(1);
+        int[] exitCode = {EXIT_OK};
+
+        format.printTailHeader(out);
+        eventService.tail(from, generation).subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+            private int received;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(TAIL_REQUEST_SIZE);
+            }
+
+            @Override
+            public void onNext(EventTailPublisher.TailedEvent item) {
+                format.printTailedEvent(out, item);
+
+                // Запитуємо наступну порцію, коли половину поточної вже надруковано
+                if(++received == TAIL_REQUEST_SIZE / 2) {
+                    received = 0;
+                    subscription.request(TAIL_REQUEST_SIZE / 2);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                err.println("Tail stopped: " + throwable.getMessage());
+                exitCode[0] = EXIT_FAILURE;
+                finished.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                finished.countDown();
+            }
+        });
+
+        // Працює до помилки або до завершення процесу (Ctrl+C)
+        finished.await();
+        return exitCode[0];
+    }
+
+    private int serve(List<String> options) throws IOException, InterruptedException {
+        int port = DEFAULT_SERVER_PORT;
+        int httpPort = -1;
+
+        for(int i = 0; i < options.size(); i++) {
+            String option = options.get(i);
+
+            if(i + 1 >= options.size()) return usage("Missing value for " + option);
+
+            try {
+                switch(option) {
+                    case "--port" -> port = Integer.parseInt(options.get(++i));
+                    case "--http-port" -> httpPort = Integer.parseInt(options.get(++i));
+                    default -> {
+                        return usage("Unknown serve option: " + option);
+                    }
+                }
+            } catch(NumberFormatException e) {
+                return usage("Invalid port: " + options.get(i));
+            }
+        }
+
+        BatchingEventWriter writer = new BatchingEventWriter(eventService);
+        IngestionServer server = new IngestionServer(writer, port, httpPort);
+
+        // Ctrl+C: спершу перестаємо приймати, потім дописуємо чергу, потім закриваємо сервіс
+        // (розсилка та контрольна точка) - усе в hook, до зупинки JVM
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch(IOException e) {
+                System.err.println("Error stopping server: " + e.getMessage());
+            }
+
+            writer.close();
+            eventService.close();
+        }));
+
+        err.println("Listening on 127.0.0.1:" + server.tcpPort()
+                + (server.httpPort() >= 0 ? " (HTTP on port " + server.httpPort() + ")" : ""));
+
+        // Головний потік лише чекає: повернення в main (і System.exit) під час зупинки JVM не потрібне
+        new CountDownLatch(1).await();
+        return EXIT_OK;
+    }
+
+    /*
+     * HELPER METHODS
+     * */
+
+    private int failedAfter(String command, int saved) {
+        err.println("Failed to write events after " + saved + " were saved.");
+        format.printResult(out, command, saved);
+
+        return EXIT_FAILURE;
+    }
+
+    private static int usage(String message) {
+        System.err.println(message);
+        System.err.println(USAGE);
+
+        return EXIT_USAGE;
+    }
+}
@@ -0,0 +1,162 @@
+package eventlogger.cli;
+
+import eventlogger.model.Event;
+import eventlogger.service.EventService;
+import eventlogger.service.EventTailPublisher;
+
+import java.io.PrintStream;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Формати виводу для неінтерактивного режиму.
+ * <p>
+ * TEXT - рядки у форматі файлу подій (їх можна знову передати в {@code import}),
+ * JSON - по одному JSON-об'єкту на рядок (JSON Lines), CSV - з заголовком.
+ */
+public enum OutputFormat {
+    TEXT, JSON, CSV;
+
+    private static final DateTimeFormatter ISO_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    /**
+     * Визначає формат за назвою з командного рядка.
+     * @param name Назва формату (text, json, csv).
+     * @return Формат або null, якщо назва невідома.
+     */
+    public static OutputFormat fromName(String name) {
+        for(OutputFormat format : values()) {
+            if(format.name().equalsIgnoreCase(name)) return format;
+        }
+
+        return null;
+    }
+
+    /**
+     * Друкує список подій.
+     * @param out Потік виводу.
+     * @param events Події.
+     */
+    public void printEvents(PrintStream out, List<Event> events) {
+        if(this == CSV) out.println("id,date_time,description");
+
+        for(Event event : events) {
+            switch(this) {
+                case TEXT -> out.println(event.toFileString());
+                case JSON -> out.println(jsonEvent(event));
+                case CSV -> out.println(event.getId() + "," + event.getDateTime().format(ISO_FORMATTER)
+                        + "," + csvField(event.getDescription()));
+            }
+        }
+    }
+
+    /**
+     * Друкує заголовок для потокового виводу {@link #printTailedEvent(PrintStream, EventTailPublisher.TailedEvent)}.
+     * @param out Потік виводу.
+     */
+    public void printTailHeader(PrintStream out) {
+        if(this == CSV) out.println("next_offset,generation,id,date_time,description");
+    }
+
+    /**
+     * Друкує подію, отриману при стеженні за файлом.
+     * JSON та CSV містять зміщення і покоління файлу, з яких можна продовжити ({@code tail --from --generation}).
+     * @param out Потік виводу.
+     * @param tailed Подія зі зміщенням.
+     */
+    public void printTailedEvent(PrintStream out, EventTailPublisher.TailedEvent tailed) {
+        Event event = tailed.event();
+
+        switch(this) {
+            case TEXT -> out.println(event.toFileString());
+            case JSON -> out.println("{\"nextOffset\":" + tailed.nextOffset() + ",\"generation\":" + tailed.generation()
+                    + ",\"event\":" + jsonEvent(event) + "}");
+            case CSV -> out.println(tailed.nextOffset() + "," + tailed.generation() + "," + event.getId()
+                    + "," + event.getDateTime().format(ISO_FORMATTER) + "," + csvField(event.getDescription()));
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Друкує статистику подій.
+     * @param out Потік виводу.
+     * @param stats Статистика.
+     */
+    public void printStatistics(PrintStream out, EventService.EventStatistics stats) {
+        switch(this) {
+            case TEXT -> {
+                out.println("Total events logged: " + stats.totalCount());
+                out.println("Events today: " + stats.todayCount());
+                out.println("First event: " + (stats.firstEvent() != null ? stats.firstEvent() : "N/A"));
+                out.println("Last event: " + (stats.lastEvent() != null ? stats.lastEvent() : "N/A"));
+            }
+            case JSON -> out.println("{\"totalCount\":" + stats.totalCount()
+                    + ",\"todayCount\":" + stats.todayCount()
+                    + ",\"firstEvent\":" + jsonEvent(stats.firstEvent())
+                    + ",\"lastEvent\":" + jsonEvent(stats.lastEvent()) + "}");
+            case CSV -> {
+                out.println("total_count,today_count,first_event,last_event");
+                out.println(stats.totalCount() + "," + stats.todayCount() + ","
+                        + csvField(stats.firstEvent() != null ? stats.firstEvent().toFileString() : "") + ","
+                        + csvField(stats.lastEvent() != null ? stats.lastEvent().toFileString() : ""));
+            }
+        }
+    }
+
+    /**
+     * Друкує підсумок команди, що змінює дані (log, import, delete, compact).
+     * @param out Потік виводу.
+     * @param command Назва команди.
+     * @param count Кількість оброблених подій.
+     */
+    public void printResult(PrintStream out, String command, int count) {
+        switch(this) {
+            case TEXT -> out.println(command + ": " + count + " event(s)");
+            case JSON -> out.println("{\"command\":" + jsonString(command) + ",\"count\":" + count + "}");
+            case CSV -> {
+                out.println("command,count");
+                out.println(command + "," + count);
+            }
+        }
+    }
+
+    /*
+     * HELPER METHODS
+     * */
+
+    private static String jsonEvent(Event event) {
+        if(event == null) return "null";
+
+        return "{\"id\":" + event.getId() + ",\"dateTime\":\"" + event.getDateTime().format(ISO_FORMATTER)
+                + "\",\"description\":" + jsonString(event.getDescription()) + "}";
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+
+        for(char c : value.toCharArray()) {
+            switch(c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                default -> {
+                    if(c < 0x20) builder.append(String.format("\\u%04x", (int) c));
+                    else builder.append(c);
+                }
+            }
+        }
+
+        return builder.append('"').toString();
+    }
+
+    private static String csvField(String value) {
+        if(value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+
+        return value;
+    }
+}
@@ -10,6 +10,8 @@ public class Event {
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
     private static final String SEPARATOR = " — ";
 
+    // 0 - ідентифікатор ще не присвоєно (нова подія або рядок старого формату)
+    private final long id;
     private final LocalDateTime dateTime;
     private final String description;
 
@@ -18,8 +20,7 @@ public class Event {
      * @param description Опис події.
      */
     public Event(String description) {
-        this.dateTime = LocalDateTime.now();
-        this.description = description;
+        this(0, LocalDateTime.now(), description);
     }
 
     /**
@@ -28,10 +29,33 @@ public class Event {
      * @param description Опис події.
      */
     public Event(LocalDateTime dateTime, String description) {
+        this(0, dateTime, description);
+    }
+
+    /**
+     * Конструктор для створення події з ідентифікатором.
+     * @param id Ідентифікатор, присвоєний репозиторієм.
+     * @param dateTime Час події.
+     * @param description Опис події.
+     */
+    public Event(long id, LocalDateTime dateTime, String description) {
+        this.id = id;
         this.dateTime = dateTime;
         this.description = description;
     }
 
+    /**
+     * Створює копію події з вказаним ідентифікатором.
+     * @param id Новий ідентифікатор.
+     * @return Нова подія.
+     */
+    public Event withId(long id) {
+        return new Event(id, dateTime, description);
+    }
+
+    public long getId() {
+        return id;
+    }
     public LocalDateTime getDateTime() {
         return dateTime;
     }
@@ -41,10 +65,13 @@ public class Event {
 
     /**
      * Форматує подію у рядок для збереження у файл.
+     * Подія з ідентифікатором зберігається як {@code id — дата — опис}.
      * @return Відформатований рядок.
      */
     public String toFileString() {
-        return dateTime.format(FORMATTER) + SEPARATOR + description;
+        String line = dateTime.format(FORMATTER) + SEPARATOR + description;
+
+        return id > 0 ? id + SEPARATOR + line : line;
     }
 
     /**
@@ -58,13 +85,20 @@ public class Event {
         }
 
         try {
+            long id = 0;
             String[] parts = line.split(SEPARATOR, 2);
 
+            // Новий формат: на початку ідентифікатор, старий починається одразу з дати
+            if(parts.length == 2 && isId(parts[0].trim())) {
+                id = Long.parseLong(parts[0].trim());
+                parts = parts[1].split(SEPARATOR, 2);
+            }
+
             if(parts.length == 2) {
                 LocalDateTime dateTime = LocalDateTime.parse(parts[0].trim(), FORMATTER);
                 String description = parts[1].trim();
 
-                return new Event(dateTime, description);
+                return new Event(id, dateTime, description);
             }
         } catch(Exception e) {
             System.err.println("Could not parse event line: " + line);
@@ -73,6 +107,16 @@ public class Event {
         return null;
     }
 
+    private static boolean isId(String value) {
+        if(value.isEmpty() || value.length() > 18) return false;
+
+        for(int i = 0; i < value.length(); i++) {
+            if(value.charAt(i) < '0' || value.charAt(i) > '9') return false;
+        }
+
+        return true;
+    }
+
     @Override
     public String toString() {
         return toFileString();
@@ -84,11 +128,11 @@ public class Event {
         if (o == null || getClass() != o.getClass()) return false;
 
         Event event = (Event) o;
-        return Objects.equals(dateTime, event.dateTime) && Objects.equals(description, event.description);
+        return id == event.id && Objects.equals(dateTime, event.dateTime) && Objects.equals(description, event.description);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(dateTime, description);
+        return Objects.hash(id, dateTime, description);
     }
 }
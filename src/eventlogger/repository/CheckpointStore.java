@@ -0,0 +1,102 @@
+package eventlogger.repository;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.zip.CRC32;
+
+/**
+ * Зберігає та завантажує контрольну точку {@link EventIndex} поруч із файлом подій
+ * ({@code events.txt.checkpoint}).
+ * <p>
+ * Формат: сигнатура, версія, довжина даних, дані та їхня CRC32.
+ * Запис іде у тимчасовий файл з атомарною заміною, тож обрив посеред запису
+ * лишає попередню контрольну точку. Пошкоджена точка не завантажується - тоді файл подій
+ * читається повністю.
+ */
+public class CheckpointStore {
+    private static final int MAGIC = 0x45564350; // "EVCP"
+    private static final int VERSION = 3;
+    private static final String SUFFIX = ".checkpoint";
+
+    private final Path path;
+
+    /**
+     * @param eventsFilePath Шлях до файлу подій, поруч з яким зберігається контрольна точка.
+     */
+    public CheckpointStore(String eventsFilePath) {
+        this.path = Path.of(eventsFilePath + SUFFIX);
+    }
+
+    /**
+     * Зберігає контрольну точку.
+     * @param index Стан для збереження.
+     * @return true, якщо успішно.
+     */
+    public boolean save(EventIndex index) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            try(DataOutputStream out = new DataOutputStream(payload)) {
+                index.writeTo(out);
+            }
+
+            byte[] bytes = payload.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                out.writeLong(crc.getValue());
+            }
+
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch(IOException e) {
+            System.err.println("Error writing checkpoint: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Завантажує останню контрольну точку.
+     * @return Стан або null, якщо точки немає чи вона пошкоджена.
+     */
+    public EventIndex load() {
+        if(!Files.exists(path)) return null;
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown checkpoint format");
+            }
+
+            int length = in.readInt();
+            if(length < 0) throw new IOException("Invalid checkpoint length");
+
+            byte[] bytes = in.readNBytes(length);
+            if(bytes.length != length) throw new IOException("Truncated checkpoint");
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            if(crc.getValue() != in.readLong()) throw new IOException("Checksum mismatch");
+
+            return EventIndex.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch(IOException e) {
+            System.err.println("Ignoring corrupted checkpoint (" + e.getMessage() + "), full scan required.");
+            return null;
+        }
+    }
+
+    /**
+     * Видаляє контрольну точку, коли вона гарантовано застаріла (файл подій переписано).
+     */
+    public void delete() {
+        try {
+            Files.deleteIfExists(path);
+        } catch(IOException e) {
+            System.err.println("Error deleting checkpoint: " + e.getMessage());
+        }
+    }
+}
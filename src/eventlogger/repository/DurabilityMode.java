@@ -0,0 +1,49 @@
+package eventlogger.repository;
+
+/**
+ * Рівень надійності запису подій - компроміс між затримкою та збереженням даних при збої.
+ * <p>
+ * Без {@code fsync} записане лежить у кеші ОС: переживає падіння процесу,
+ * але не вимкнення живлення чи падіння ОС. {@code fsync} ({@link java.nio.channels.FileChannel#force(boolean)})
+ * чекає, доки дані реально потраплять на диск, і коштує від десятих мілісекунди (NVMe)
+ * до десятків мілісекунд (HDD, мережеві диски) - незалежно від обсягу.
+ * Тому пропускна здатність визначається тим, скільки подій припадає на один {@code fsync}.
+ * <p>
+ * Повний перезапис файлу ({@code compact}, {@code migrate}, видалення всіх подій) у будь-якому режимі
+ * йде через тимчасовий файл з атомарною заміною, тож після збою лишається або старий, або новий файл.
+ * Крім {@link #NONE}, тимчасовий файл скидається на диск до заміни, а каталог - після неї.
+ */
+public enum DurabilityMode {
+    /**
+     * Без {@code fsync}. Найшвидший режим: пропускну здатність обмежує лише запис у кеш ОС.
+     * При збої ОС можна втратити останні секунди подій, а останній рядок може бути обірваним.
+     */
+    NONE,
+
+    /**
+     * Один {@code fsync} на кожен виклик запису: пакет ({@code saveAll}) або одну подію ({@code save}).
+     * Для пакетного імпорту та сервера вартість {@code fsync} ділиться на всі події пакета,
+     * тож пропускна здатність близька до {@link #NONE}, а підтверджений пакет гарантовано на диску.
+     */
+    BATCH,
+
+    /**
+     * {@code fsync} після кожної події, навіть усередині пакета.
+     * Найбезпечніший і найповільніший режим: не більше однієї події на {@code fsync},
+     * тобто сотні - кілька тисяч подій за секунду залежно від диска.
+     */
+    EVENT;
+
+    /**
+     * Визначає режим за назвою з командного рядка.
+     * @param name Назва режиму (none, batch, event).
+     * @return Режим або null, якщо назва невідома.
+     */
+    public static DurabilityMode fromName(String name) {
+        for(DurabilityMode mode : values()) {
+            if(mode.name().equalsIgnoreCase(name)) return mode;
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,334 @@
+package eventlogger.repository;
+
+import eventlogger.model.Event;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Зведений стан файлу подій, що дозволяє відповідати на статистику та пошук за датою
+ * без повного перечитування файлу.
+ * <p>
+ * Стан будується послідовним читанням рядків ({@link #add(Event, long, long)}) до зміщення
+ * {@link #committedOffset()}, тож після перезапуску достатньо дочитати лише те, що дописано після нього.
+ * Для перевірки, що файл не переписали, зберігається контрольна сума байтів перед цим зміщенням
+ * та лічильник змін на місці ({@link EventRepository.Generation#edits()}) - контрольна сума
+ * не бачить видалень посеред файлу.
+ * <p>
+ * Також тут індекс ідентифікатор → зміщення: ідентифікатори у файлі зростають разом зі зміщеннями,
+ * тож це два відсортовані масиви, пошук у яких - бінарний, O(log n).
+ */
+public class EventIndex {
+    private long committedOffset;
+    private long fingerprint;
+    private long generation = -1;
+    private int count;
+    private Event firstEvent;
+    private Event lastEvent;
+    private final TreeMap<LocalDate, DateEntry> dates = new TreeMap<>();
+
+    // Індекс ідентифікаторів: ids[i] зберігається за зміщенням offsets[i]
+    private long[] ids = new long[1024];
+    private long[] offsets = new long[1024];
+    private int idCount;
+    private final BitSet deleted = new BitSet();
+    private int legacyCount;
+
+    /**
+     * Події однієї дати.
+     * @param firstOffset Зміщення першої події цієї дати - пошук починається звідси.
+     * @param count Кількість подій цієї дати.
+     */
+    public record DateEntry(long firstOffset, int count) {}
+
+    /**
+     * Додає прочитану подію. Сумісний з {@link EventRepository.RecordVisitor}.
+     * @return Завжди true - читати далі.
+     */
+    public boolean add(Event event, long start, long end) {
+        if(firstEvent == null) firstEvent = event;
+        lastEvent = event;
+        count++;
+
+        dates.merge(event.getDateTime().toLocalDate(), new DateEntry(start, 1),
+                (existing, added) -> new DateEntry(existing.firstOffset(), existing.count() + 1));
+
+        if(event.getId() == 0) {
+            legacyCount++;
+        } else if(idCount == 0 || event.getId() > ids[idCount - 1]) {
+            if(idCount == ids.length) {
+                ids = Arrays.copyOf(ids, idCount * 2);
+                offsets = Arrays.copyOf(offsets, idCount * 2);
+            }
+
+            ids[idCount] = event.getId();
+            offsets[idCount] = start;
+            idCount++;
+        }
+
+        return true;
+    }
+
+    /**
+     * Прибирає видалену подію зі стану.
+     * Якщо це була перша чи остання подія, вона скидається в null - нові межі
+     * слід знайти через {@link #firstLiveOffset()}/{@link #lastLiveOffset()} і задати {@link #setBounds(Event, Event)}.
+     * @param event Видалена подія.
+     */
+    public void remove(Event event) {
+        int position = Arrays.binarySearch(ids, 0, idCount, event.getId());
+        if(position < 0 || deleted.get(position)) return;
+
+        deleted.set(position);
+        count--;
+
+        dates.computeIfPresent(event.getDateTime().toLocalDate(),
+                (date, entry) -> entry.count() > 1 ? new DateEntry(entry.firstOffset(), entry.count() - 1) : null);
+
+        if(firstEvent != null && firstEvent.getId() == event.getId()) firstEvent = null;
+        if(lastEvent != null && lastEvent.getId() == event.getId()) lastEvent = null;
+    }
+
+    /**
+     * Знаходить зміщення події за ідентифікатором.
+     * @param id Ідентифікатор.
+     * @return Зміщення або -1, якщо такої події немає.
+     */
+    public long offsetOf(long id) {
+        int position = Arrays.binarySearch(ids, 0, idCount, id);
+
+        return position >= 0 && !deleted.get(position) ? offsets[position] : -1;
+    }
+
+    /**
+     * @return Зміщення першої не видаленої події або -1.
+     */
+    public long firstLiveOffset() {
+        int position = deleted.nextClearBit(0);
+
+        return position < idCount ? offsets[position] : -1;
+    }
+
+    /**
+     * @return Зміщення останньої не видаленої події або -1.
+     */
+    public long lastLiveOffset() {
+        int position = deleted.previousClearBit(idCount - 1);
+
+        return position >= 0 ? offsets[position] : -1;
+    }
+
+    public void setBounds(Event firstEvent, Event lastEvent) {
+        this.firstEvent = firstEvent;
+        this.lastEvent = lastEvent;
+    }
+
+    /**
+     * @return Кількість подій старого формату (без ідентифікатора).
+     */
+    public int legacyCount() {
+        return legacyCount;
+    }
+
+    /**
+     * Фіксує, до якого місця файл прочитано.
+     * @param offset Зміщення після останнього прочитаного рядка.
+     * @param fingerprint Контрольна сума байтів перед цим зміщенням, див. {@link EventRepository#checksumBefore(long)}.
+     * @param generation Лічильник змін на місці, взятий до читання, див. {@link EventRepository.Generation#edits()}.
+     */
+    public void commit(long offset, long fingerprint, long generation) {
+        this.committedOffset = offset;
+        this.fingerprint = fingerprint;
+        this.generation = generation;
+    }
+
+    public long committedOffset() {
+        return committedOffset;
+    }
+    public long fingerprint() {
+        return fingerprint;
+    }
+    public long generation() {
+        return generation;
+    }
+    public int count() {
+        return count;
+    }
+    public Event firstEvent() {
+        return firstEvent;
+    }
+    public Event lastEvent() {
+        return lastEvent;
+    }
+
+    /**
+     * Кількість подій за вказаною датою.
+     * @param date Дата.
+     * @return Кількість подій.
+     */
+    public int countOn(LocalDate date) {
+        DateEntry entry = dates.get(date);
+
+        return entry != null ? entry.count() : 0;
+    }
+
+    /**
+     * Зводить дати з проміжку (включно) в одне місце для пошуку.
+     * @param from Початкова дата або null.
+     * @param to Кінцева дата або null.
+     * @return Найменше зміщення та загальна кількість подій, або null, якщо подій у проміжку немає.
+     */
+    public DateEntry range(LocalDate from, LocalDate to) {
+        NavigableMap<LocalDate, DateEntry> selected = dates;
+
+        if(from != null) selected = selected.tailMap(from, true);
+        if(to != null) selected = selected.headMap(to, true);
+
+        long firstOffset = Long.MAX_VALUE;
+        int total = 0;
+
+        for(DateEntry entry : selected.values()) {
+            firstOffset = Math.min(firstOffset, entry.firstOffset());
+            total += entry.count();
+        }
+
+        return total > 0 ? new DateEntry(firstOffset, total) : null;
+    }
+
+    /*
+     * SERIALIZATION
+     * */
+
+    /**
+     * Записує стан у потік (для контрольної точки).
+     * @param out Потік.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(committedOffset);
+        out.writeLong(fingerprint);
+        out.writeLong(generation);
+        out.writeInt(count);
+        writeEvent(out, firstEvent);
+        writeEvent(out, lastEvent);
+
+        out.writeInt(dates.size());
+        for(Map.Entry<LocalDate, DateEntry> entry : dates.entrySet()) {
+            out.writeLong(entry.getKey().toEpochDay());
+            out.writeLong(entry.getValue().firstOffset());
+            out.writeInt(entry.getValue().count());
+        }
+
+        // Обидва масиви зростають, тож зберігаємо різниці сусідніх значень - зазвичай 1-2 байти
+        out.writeInt(legacyCount);
+        out.writeInt(idCount);
+        for(int i = 0; i < idCount; i++) {
+            writeVarLong(out, ids[i] - (i > 0 ? ids[i - 1] : 0));
+            writeVarLong(out, offsets[i] - (i > 0 ? offsets[i - 1] : 0));
+        }
+
+        long[] deletedWords = deleted.toLongArray();
+        out.writeInt(deletedWords.length);
+        for(long word : deletedWords) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Відновлює стан з потоку.
+     * @param in Потік.
+     * @return Відновлений стан.
+     * @throws IOException Якщо дані пошкоджені.
+     */
+    static EventIndex readFrom(DataInputStream in) throws IOException {
+        EventIndex index = new EventIndex();
+
+        index.committedOffset = in.readLong();
+        index.fingerprint = in.readLong();
+        index.generation = in.readLong();
+        index.count = in.readInt();
+        index.firstEvent = readEvent(in);
+        index.lastEvent = readEvent(in);
+
+        int dateCount = in.readInt();
+        for(int i = 0; i < dateCount; i++) {
+            LocalDate date = LocalDate.ofEpochDay(in.readLong());
+            index.dates.put(date, new DateEntry(in.readLong(), in.readInt()));
+        }
+
+        index.legacyCount = in.readInt();
+        index.idCount = in.readInt();
+        if(index.idCount < 0) throw new IOException("Invalid id index size");
+
+        index.ids = new long[Math.max(index.idCount, 1024)];
+        index.offsets = new long[index.ids.length];
+        for(int i = 0; i < index.idCount; i++) {
+            index.ids[i] = readVarLong(in) + (i > 0 ? index.ids[i - 1] : 0);
+            index.offsets[i] = readVarLong(in) + (i > 0 ? index.offsets[i - 1] : 0);
+        }
+
+        long[] deletedWords = new long[in.readInt()];
+        for(int i = 0; i < deletedWords.length; i++) {
+            deletedWords[i] = in.readLong();
+        }
+        index.deleted.or(BitSet.valueOf(deletedWords));
+
+        if(index.committedOffset < 0 || index.count < 0 || (index.count > 0) != (index.lastEvent != null)) {
+            throw new IOException("Inconsistent checkpoint data");
+        }
+
+        return index;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+
+        for(int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+
+            if((b & 0x80) == 0) return value;
+        }
+
+        throw new IOException("Malformed variable-length number");
+    }
+
+    private static void writeEvent(DataOutputStream out, Event event) throws IOException {
+        if(event == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = event.toFileString().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static Event readEvent(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if(length < 0) return null;
+
+        byte[] bytes = in.readNBytes(length);
+        if(bytes.length != length) throw new IOException("Truncated checkpoint");
+
+        Event event = Event.fromFileString(new String(bytes, StandardCharsets.UTF_8));
+        if(event == null) throw new IOException("Corrupted event in checkpoint");
+
+        return event;
+    }
+}
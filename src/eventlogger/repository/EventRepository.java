@@ -3,10 +3,23 @@ package eventlogger.repository;
 import eventlogger.model.Event;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 
 /**
  * Тут, мабуть, буде доречним пояснити що це за клас,
@@ -20,25 +33,164 @@ import java.util.stream.Collectors;
  * <p>
  * <a href="https://uk.wikipedia.org/wiki/Data_access_object">Data access object Wikipedia</a>
  * @param filePath Шлях до файлу з подіями.
+ * @param durability Коли примусово скидати записане на диск, див. {@link DurabilityMode}.
  * */
-public record EventRepository(String filePath) {
+public record EventRepository(String filePath, DurabilityMode durability) {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int FINGERPRINT_BYTES = 64;
+
+    // Позначка видаленої події: "~id", доповнена пробілами до довжини початкового рядка
+    private static final char TOMBSTONE_MARK = '~';
+
+    // FileLock не захищає від інших потоків того ж процесу, тому спершу - монітор на шлях
+    private static final Map<String, Object> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    // Файл поруч із файлом подій: на ньому береться FileLock, у ньому ж лічильники змін (Generation)
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final int GENERATION_BYTES = 2 * Long.BYTES;
+
+    /**
+     * Лічильники змін файлу подій, крім дописування в кінець.
+     * Зберігаються у файлі блокування, змінюються лише під блокуванням запису.
+     * @param rewrites Скільки разів файл переписувався повністю - зміщення старих рядків більше не дійсні.
+     * @param edits Зміни вже записаних байтів (видалення на місці, перезапис, обрізання).
+     *              Збільшується до і після кожної зміни, тож непарне значення означає, що зміна триває
+     *              (або процес впав посеред неї - тоді це виправляє {@link #recover()}).
+     */
+    public record Generation(long rewrites, long edits) {
+        /**
+         * @return true, якщо файл зараз ніхто не змінює.
+         */
+        public boolean stable() {
+            return edits >= 0 && edits % 2 == 0;
+        }
+    }
+
+    /**
+     * Результат {@link #migrate()}.
+     * @param assigned Скільки подій отримали ідентифікатор.
+     * @param skipped Скільки подій лишились без ідентифікатора: між сусідніми ідентифікаторами
+     *                немає вільного, а вже видані ідентифікатори не змінюються.
+     */
+    public record Migration(int assigned, int skipped) {}
+
+    /**
+     * Обробник записів для {@link #scanFrom(long, RecordVisitor)}.
+     */
+    @FunctionalInterface
+    public interface RecordVisitor {
+        /**
+         * @param event Прочитана подія.
+         * @param start Зміщення початку рядка у байтах.
+         * @param end Зміщення одразу після рядка (початок наступного).
+         * @return true, щоб читати далі; false, щоб зупинитись - цей рядок вважається не обробленим.
+         */
+        boolean visit(Event event, long start, long end);
+    }
+
+    /**
+     * Репозиторій з режимом {@link DurabilityMode#BATCH}: один {@code fsync} на кожен запис.
+     * @param filePath Шлях до файлу з подіями.
+     */
+    public EventRepository(String filePath) {
+        this(filePath, DurabilityMode.BATCH);
+    }
+
+    /**
+     * Перетворення рядка при перезаписі файлу, що зберігає решту рядків як є.
+     */
+    @FunctionalInterface
+    private interface LineMapper {
+        /**
+         * @param line Рядок файлу (без переведення рядка).
+         * @param event Подія з цього рядка або null, якщо рядок не є подією.
+         * @return Рядок для запису (той самий або змінений) або null, щоб прибрати рядок.
+         */
+        String map(String line, Event event);
+    }
+
+    /**
+     * Дія над файлом, що виконується під блокуванням запису.
+     */
+    @FunctionalInterface
+    private interface WriteAction<T> {
+        /**
+         * @param channel Файл подій.
+         * @param lockFile Файл блокування з лічильниками змін, див. {@link #beginChange(FileChannel, boolean)}.
+         */
+        T apply(FileChannel channel, FileChannel lockFile) throws IOException;
+    }
 
     /**
-     * Зберігає подію у файл.
+     * Зберігає подію у файл, присвоюючи їй наступний ідентифікатор.
      * @param event Подія для збереження.
-     * @return true, якщо збереження пройшло успішно, інакше false.
+     * @return Збережена подія з ідентифікатором або null, якщо запис не вдався.
      */
-    public boolean save(Event event) {
-        try(BufferedWriter writer = new BufferedWriter(
-                new FileWriter(filePath, true)
-        )) {
-            writer.write(event.toFileString());
-            writer.newLine();
+    public Event save(Event event) {
+        List<Event> saved = saveAll(List.of(event));
+
+        return saved != null ? saved.getFirst() : null;
+    }
+
+    /**
+     * Зберігає пакет подій у файл за одне відкриття файлу.
+     * Використовується для пакетного імпорту, щоб тисячі подій не відкривали файл кожна окремо.
+     * <p>
+     * Ідентифікатори присвоюються під блокуванням файлу (і між потоками, і між процесами),
+     * тож вони зростають у порядку рядків у файлі навіть при одночасному записі.
+     * @param events Події для збереження (їхні ідентифікатори ігноруються).
+     * @return Збережені події з ідентифікаторами або null, якщо запис не вдався.
+     */
+    public List<Event> saveAll(List<Event> events) {
+        return saveAll(events, (event, start, end) -> true);
+    }
+
+    /**
+     * Зберігає пакет подій, як {@link #saveAll(List)}, і повідомляє, куди записано кожну з них.
+     * @param events Події для збереження (їхні ідентифікатори ігноруються).
+     * @param written Отримує кожну збережену подію з її зміщеннями у файлі, у порядку запису,
+     *                ще під блокуванням запису (повернене значення ігнорується).
+     * @return Збережені події з ідентифікаторами або null, якщо запис не вдався.
+     */
+    public List<Event> saveAll(List<Event> events, RecordVisitor written) {
+        try {
+            return withWriteLock((channel, lockFile) -> {
+                long nextId = lastAssignedId(channel) + 1;
+                List<Event> saved = new ArrayList<>(events.size());
+                long[] ends = new long[events.size()];
+                StringBuilder lines = new StringBuilder();
+                long start = channel.size();
+                long position = start;
+                long end = start;
+
+                for(Event event : events) {
+                    Event withId = event.withId(nextId++);
+                    String line = withId.toFileString() + System.lineSeparator();
+
+                    end += line.getBytes(StandardCharsets.UTF_8).length;
+                    ends[saved.size()] = end;
+                    saved.add(withId);
+                    lines.append(line);
+
+                    if(durability == DurabilityMode.EVENT) {
+                        position = writeFully(channel, lines.toString(), position);
+                        channel.force(false);
+                        lines.setLength(0);
+                    }
+                }
+
+                if(!lines.isEmpty()) writeFully(channel, lines.toString(), position);
+                if(durability == DurabilityMode.BATCH) channel.force(false);
+
+                for(int i = 0; i < saved.size(); i++) {
+                    written.visit(saved.get(i), i == 0 ? start : ends[i - 1], ends[i]);
+                }
 
-            return true;
+                return saved;
+            });
         } catch(IOException e) {
             System.err.println("Error writing to file: " + e.getMessage());
-            return false;
+            return null;
         }
     }
 
@@ -48,21 +200,70 @@ public record EventRepository(String filePath) {
      * @return true якщо успішно.
      */
     public boolean rewrite(List<Event> events) {
-        try(BufferedWriter writer = new BufferedWriter(
-                new FileWriter(filePath, false)
-        )) {
-            for(Event event : events) {
-                writer.write(event.toFileString());
-                writer.newLine();
-            }
-
-            return true;
+        try {
+            return withWriteLock((channel, lockFile) -> writeAll(channel, lockFile, events));
         } catch(IOException e) {
             System.err.println("Error rewriting file: " + e.getMessage());
             return false;
         }
     }
 
+    /**
+     * Перезаписує файл лише коректними подіями: прибирає порожні, пошкоджені рядки
+     * та позначки видалених подій, а подіям старого формату присвоює ідентифікатори там,
+     * де між сусідами є вільний (див. {@link #migrate()}). Вже видані ідентифікатори не змінюються.
+     * Читання й запис відбуваються під одним блокуванням.
+     * @return Кількість подій, що залишились, або -1, якщо перезапис не вдався.
+     */
+    public int compact() {
+        try {
+            return withWriteLock((channel, lockFile) -> {
+                List<String> lines = readLines(channel);
+                List<Event> events = new ArrayList<>();
+                long[] ids = new long[lines.size()];
+                int[] eventLines = new int[lines.size()];
+
+                // Позначки видалення теж займають ідентифікатори, хоча самі не лишаються
+                int count = 0;
+                for(String line : lines) {
+                    Event event = Event.fromFileString(line);
+
+                    if(event != null) {
+                        eventLines[events.size()] = count;
+                        events.add(event);
+                        ids[count++] = event.getId();
+                    } else if(tombstoneId(line) > 0) {
+                        ids[count++] = tombstoneId(line);
+                    }
+                }
+
+                long[] assigned = assignLegacyIds(Arrays.copyOf(ids, count));
+                long highestAssigned = lastAssignedId(channel);
+                long previousId = 0;
+                StringBuilder result = new StringBuilder();
+
+                for(int i = 0; i < events.size(); i++) {
+                    Event event = events.get(i);
+                    long id = assigned[eventLines[i]];
+                    if(event.getId() == 0 && id > 0) event = event.withId(id);
+
+                    previousId = Math.max(previousId, event.getId());
+                    result.append(event.toFileString()).append(System.lineSeparator());
+                }
+
+                if(highestAssigned > previousId) {
+                    result.append(TOMBSTONE_MARK).append(highestAssigned).append(System.lineSeparator());
+                }
+
+                replaceContent(lockFile, result.toString());
+                return events.size();
+            });
+        } catch(IOException e) {
+            System.err.println("Error rewriting file: " + e.getMessage());
+            return -1;
+        }
+    }
+
     /**
      * Зчитує всі події з файлу.
      * @return Список подій.
@@ -92,6 +293,116 @@ public record EventRepository(String filePath) {
         return events;
     }
 
+    /**
+     * Читає події, починаючи з байтового зміщення у файлі.
+     * Обробляються лише повні рядки (з переведенням рядка в кінці), тож рядок,
+     * який саме дописується іншим процесом, буде прочитаний наступного разу.
+     * @param offset Зміщення початку рядка, з якого почати читання.
+     * @param visitor Обробник подій.
+     * @return Зміщення, з якого слід продовжити читання наступного разу.
+     */
+    public long scanFrom(long offset, RecordVisitor visitor) {
+        long lineStart = offset;
+
+        try(FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long chunkStart = offset;
+
+            channel.position(offset);
+
+            while(channel.read(buffer) > 0) {
+                byte[] chunk = buffer.array();
+                int limit = buffer.position();
+                int from = 0;
+
+                for(int i = 0; i < limit; i++) {
+                    if(chunk[i] != '\n') continue;
+
+                    line.write(chunk, from, i - from);
+                    from = i + 1;
+
+                    String text = line.toString(StandardCharsets.UTF_8);
+                    line.reset();
+
+                    if(text.endsWith("\r")) text = text.substring(0, text.length() - 1);
+
+                    long lineEnd = chunkStart + i + 1;
+                    Event event = Event.fromFileString(text);
+
+                    if(event != null && !visitor.visit(event, lineStart, lineEnd)) {
+                        return lineStart;
+                    }
+
+                    lineStart = lineEnd;
+                }
+
+                line.write(chunk, from, limit - from);
+                chunkStart += limit;
+                buffer.clear();
+            }
+        } catch(NoSuchFileException e) {
+            return offset;
+        } catch(IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        }
+
+        return lineStart;
+    }
+
+    /**
+     * Повертає поточний розмір файлу у байтах.
+     * @return Розмір файлу або 0, якщо файлу немає.
+     */
+    public long size() {
+        return new File(filePath).length();
+    }
+
+    /**
+     * Рахує контрольну суму останніх байтів перед зміщенням.
+     * Дозволяє швидко перевірити, що вже прочитана частина файлу не змінилась.
+     * @param offset Зміщення.
+     * @return CRC32 байтів перед зміщенням або -1, якщо файл коротший за зміщення.
+     */
+    public long checksumBefore(long offset) {
+        long start = Math.max(0, offset - FINGERPRINT_BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate((int) (offset - start));
+
+        try(FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            while(buffer.hasRemaining()) {
+                if(channel.read(buffer, start + buffer.position()) < 0) return -1;
+            }
+        } catch(NoSuchFileException e) {
+            return offset == 0 ? new CRC32().getValue() : -1;
+        } catch(IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+            return -1;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.flip());
+
+        return crc.getValue();
+    }
+
+    /**
+     * Перевіряє, що зі зміщення починається рядок: це початок файлу або перед ним переведення рядка.
+     * @param offset Зміщення.
+     * @return true, якщо зміщення - межа рядків; false, якщо воно посеред рядка або за кінцем файлу.
+     */
+    public boolean isLineStart(long offset) {
+        if(offset == 0) return true;
+
+        try(FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            return offset <= channel.size() && readByte(channel, offset - 1) == '\n';
+        } catch(NoSuchFileException e) {
+            return false;
+        } catch(IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+            return false;
+        }
+    }
+
     /**
      * Знаходить події за вказаною датою.
      * @param date Дата для пошуку.
@@ -103,6 +414,22 @@ public record EventRepository(String filePath) {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Знаходить події у вказаному проміжку дат (включно).
+     * @param from Початкова дата або null, якщо без нижньої межі.
+     * @param to Кінцева дата або null, якщо без верхньої межі.
+     * @return Список подій у проміжку.
+     */
+    public List<Event> findBetween(LocalDate from, LocalDate to) {
+        return findAll().stream()
+                .filter(event -> {
+                    LocalDate date = event.getDateTime().toLocalDate();
+
+                    return (from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to));
+                })
+                .collect(Collectors.toList());
+    }
+
     /**
      * Знаходить події, що відбулися сьогодні.
      * @return Список подій за сьогоднішню дату.
@@ -132,18 +459,221 @@ public record EventRepository(String filePath) {
     }
 
     /**
-     * Видаляє подію за індексом.
+     * Видаляє подію за індексом. Рядки, що не є подіями, лишаються у файлі.
      * @param index Індекс події для видалення.
      * @return true, якщо успішно видалено, інакше false.
      * */
     public boolean deleteByIndex(int index) {
-        List<Event> events = findAll();
+        try {
+            return withWriteLock((channel, lockFile) -> {
+                int[] position = {0};
+
+                return rewriteLines(channel, lockFile, (line, event) -> event != null && position[0]++ == index ? null : line);
+            });
+        } catch(IOException e) {
+            System.err.println("Error rewriting file: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Видаляє подію старого формату (без ідентифікатора) - першу з таким самим часом та описом.
+     * Рядки, що не є подіями, лишаються у файлі.
+     * @param event Подія для видалення.
+     * @return true, якщо подію знайдено і видалено.
+     */
+    public boolean deleteLegacy(Event event) {
+        try {
+            return withWriteLock((channel, lockFile) -> {
+                boolean[] removed = {false};
+
+                rewriteLines(channel, lockFile, (line, parsed) -> {
+                    if(!removed[0] && parsed != null && parsed.getId() == 0 && parsed.equals(event)) {
+                        removed[0] = true;
+                        return null;
+                    }
+
+                    return line;
+                });
+
+                return removed[0];
+            });
+        } catch(IOException e) {
+            System.err.println("Error rewriting file: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Присвоює ідентифікатори подіям старого формату, не чіпаючи жодних інших рядків
+     * (нотатки, пошкоджені рядки та позначки видалення лишаються як є).
+     * Вже видані ідентифікатори ніколи не змінюються: подія отримує наступний ідентифікатор
+     * після попереднього, лише якщо він менший за всі ідентифікатори після неї.
+     * Інакше подія лишається без ідентифікатора і враховується в {@link Migration#skipped()}.
+     * @return Результат міграції або null при помилці.
+     */
+    public Migration migrate() {
+        try {
+            return withWriteLock((channel, lockFile) -> {
+                List<String> lines = readLines(channel);
+                long[] ids = new long[lines.size()];
+                Event[] events = new Event[lines.size()];
+
+                for(int i = 0; i < lines.size(); i++) {
+                    events[i] = Event.fromFileString(lines.get(i));
+                    ids[i] = events[i] != null ? events[i].getId() : tombstoneId(lines.get(i));
+
+                    // Рядок, що не є ні подією, ні позначкою, на ідентифікатори не впливає
+                    if(events[i] == null && ids[i] == 0) ids[i] = -1;
+                }
+
+                long[] assigned = assignLegacyIds(ids);
+                int migrated = 0;
+                int skipped = 0;
+
+                for(int i = 0; i < lines.size(); i++) {
+                    if(events[i] == null || events[i].getId() > 0) continue;
+
+                    if(assigned[i] > 0) {
+                        lines.set(i, events[i].withId(assigned[i]).toFileString());
+                        migrated++;
+                    } else {
+                        skipped++;
+                    }
+                }
+
+                if(migrated > 0) replaceContent(lockFile, String.join(System.lineSeparator(), lines) + System.lineSeparator());
+
+                return new Migration(migrated, skipped);
+            });
+        } catch(IOException e) {
+            System.err.println("Error rewriting file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Відновлення після збою: якщо останній запис обірваний (немає переведення рядка в кінці
+     * і він не читається як подія, або в ньому нульові байти, які лишає ФС після збою),
+     * файл обрізається до останнього цілого рядка. Останній рядок без переведення рядка,
+     * що є коректною подією, лишається - йому дописується переведення рядка.
+     * Виконується під блокуванням запису, тож не зачіпає запис, який саме робить інший процес.
+     * @return Кількість відрізаних байтів (0 - файл цілий) або -1 при помилці.
+     */
+    public long recover() {
+        try {
+            return withWriteLock((channel, lockFile) -> {
+                // Попередній процес впав посеред зміни - вона вже не триває
+                if(!readGeneration(lockFile).stable()) endChange(lockFile);
+
+                long size = channel.size();
+                long end = size;
+
+                while(end > 0) {
+                    long lineStart = findLineStart(channel, end);
+                    boolean complete = readByte(channel, end - 1) == '\n';
+
+                    if(!containsZero(channel, lineStart, end)) {
+                        if(complete) break;
+
+                        // Останній рядок без переведення рядка, але ціла подія (напр. файл редагували вручну)
+                        if(end == size && isEventLine(channel, lineStart, end)) {
+                            writeFully(channel, System.lineSeparator(), end);
+                            if(durability != DurabilityMode.NONE) channel.force(false);
+                            break;
+                        }
+                    }
+
+                    end = lineStart;
+                }
+
+                if(end < size) {
+                    beginChange(lockFile, false);
+
+                    try {
+                        channel.truncate(end);
+                        if(durability != DurabilityMode.NONE) channel.force(true);
+                    } finally {
+                        endChange(lockFile);
+                    }
+
+                    System.err.println("Recovered event log: truncated " + (size - end) + " byte(s) of a torn record.");
+                }
 
-        if(index < 0 || index >= events.size()) return false;
+                return size - end;
+            });
+        } catch(IOException e) {
+            System.err.println("Error recovering file: " + e.getMessage());
+            return -1;
+        }
+    }
 
-        events.remove(index);
+    /**
+     * Поточні лічильники змін файлу, див. {@link Generation}.
+     * Читаються без блокування: той, хто читає файл, бере їх до читання і порівнює з наступними.
+     * @return Лічильники або {@code Generation(-1, -1)} (нестабільний), якщо їх не вдалося прочитати.
+     */
+    public Generation generation() {
+        Path lockPath = Path.of(filePath + LOCK_SUFFIX);
+        if(!Files.exists(lockPath)) return new Generation(0, 0);
 
-        return rewrite(events);
+        try(FileChannel lockFile = FileChannel.open(lockPath, StandardOpenOption.READ)) {
+            return readGeneration(lockFile);
+        } catch(IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+            return new Generation(-1, -1);
+        }
+    }
+
+    /**
+     * Читає подію, що починається з вказаного зміщення.
+     * @param offset Зміщення початку рядка.
+     * @return Подія або null, якщо за зміщенням немає коректної події.
+     */
+    public Event readAt(long offset) {
+        try(FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            byte[] line = readLineAt(channel, offset);
+
+            return line != null ? Event.fromFileString(new String(line, StandardCharsets.UTF_8)) : null;
+        } catch(IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Видаляє подію на місці: рядок замінюється позначкою видалення тієї ж довжини,
+     * тож решта файлу не зсувається і не переписується.
+     * Порожні місця прибирає {@link #compact()}.
+     * @param id Ідентифікатор події.
+     * @param offset Зміщення рядка цієї події (з індексу).
+     * @return Видалена подія або null, якщо за зміщенням вже немає події з таким ідентифікатором.
+     */
+    public Event deleteById(long id, long offset) {
+        try {
+            return withWriteLock((channel, lockFile) -> {
+                byte[] line = readLineAt(channel, offset);
+                if(line == null) return null;
+
+                Event event = Event.fromFileString(new String(line, StandardCharsets.UTF_8));
+                if(event == null || event.getId() != id) return null;
+
+                String tombstone = TOMBSTONE_MARK + Long.toString(id);
+                beginChange(lockFile, false);
+
+                try {
+                    writeFully(channel, tombstone + " ".repeat(line.length - tombstone.length()), offset);
+                    if(durability != DurabilityMode.NONE) channel.force(false);
+                } finally {
+                    endChange(lockFile);
+                }
+
+                return event;
+            });
+        } catch(IOException e) {
+            System.err.println("Error writing to file: " + e.getMessage());
+            return null;
+        }
     }
 
     /**
@@ -169,4 +699,386 @@ public record EventRepository(String filePath) {
     public boolean hasEvents() {
         return count() > 0;
     }
+
+    /*
+     * HELPER METHODS
+     * */
+
+    /**
+     * Виконує дію під блокуванням запису: спершу між потоками цього процесу, потім між процесами.
+     */
+    private <T> T withWriteLock(WriteAction<T> action) throws IOException {
+        Path path = Path.of(filePath).toAbsolutePath().normalize();
+        Object processLock = PROCESS_LOCKS.computeIfAbsent(path.toString(), key -> new Object());
+
+        synchronized(processLock) {
+            try(FileChannel lockFile = FileChannel.open(Path.of(path + LOCK_SUFFIX),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+                FileLock lock = lockFile.lock();
+
+                try(FileChannel channel = FileChannel.open(path,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+                    return action.apply(channel, lockFile);
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Записує події замість поточного вмісту файлу. Ідентифікатори подій не змінюються.
+     * Якщо найбільший виданий ідентифікатор зникає з файлу, його позначка лишається,
+     * щоб ідентифікатори не повторювались.
+     */
+    private boolean writeAll(FileChannel channel, FileChannel lockFile, List<Event> events) throws IOException {
+        long highestAssigned = lastAssignedId(channel);
+        long previousId = 0;
+        StringBuilder lines = new StringBuilder();
+
+        for(Event event : events) {
+            previousId = Math.max(previousId, event.getId());
+            lines.append(event.toFileString()).append(System.lineSeparator());
+        }
+
+        if(highestAssigned > previousId) {
+            lines.append(TOMBSTONE_MARK).append(highestAssigned).append(System.lineSeparator());
+        }
+
+        replaceContent(lockFile, lines.toString());
+        return true;
+    }
+
+    /**
+     * Підбирає ідентифікатори подіям без ідентифікатора, не змінюючи жодного вже виданого:
+     * подія отримує наступний після найбільшого попереднього, якщо він менший за всі наступні.
+     * @param ids Ідентифікатори записів у порядку файлу: 0 - подія без ідентифікатора,
+     *            від'ємне значення - рядок, що не впливає на ідентифікатори.
+     * @return Підібрані ідентифікатори для подій без ідентифікатора (0 - вільного немає),
+     *         для решти записів - їхні ж значення.
+     */
+    private static long[] assignLegacyIds(long[] ids) {
+        long[] result = ids.clone();
+        long[] nextMin = new long[ids.length + 1];
+
+        nextMin[ids.length] = Long.MAX_VALUE;
+        for(int i = ids.length - 1; i >= 0; i--) {
+            nextMin[i] = ids[i] > 0 ? Math.min(ids[i], nextMin[i + 1]) : nextMin[i + 1];
+        }
+
+        long previousId = 0;
+        for(int i = 0; i < ids.length; i++) {
+            if(ids[i] == 0 && previousId + 1 < nextMin[i + 1]) result[i] = ++previousId;
+
+            previousId = Math.max(previousId, result[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Читає всі рядки файлу як є (без переведень рядка).
+     */
+    private static List<String> readLines(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, buffer.position()) < 0) break;
+        }
+
+        String content = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        String[] parts = content.split("\n", -1);
+        List<String> lines = new ArrayList<>(parts.length);
+
+        // Після останнього переведення рядка - порожній залишок, а не рядок
+        int lineCount = content.endsWith("\n") ? parts.length - 1 : parts.length;
+
+        for(int i = 0; i < lineCount; i++) {
+            lines.add(parts[i].endsWith("\r") ? parts[i].substring(0, parts[i].length() - 1) : parts[i]);
+        }
+
+        return lines;
+    }
+
+    /**
+     * Перезаписує файл рядок за рядком через {@link LineMapper}; якщо жоден рядок не змінився, файл не чіпається.
+     * @return true, якщо файл перезаписано.
+     */
+    private boolean rewriteLines(FileChannel channel, FileChannel lockFile, LineMapper mapper) throws IOException {
+        StringBuilder result = new StringBuilder();
+        boolean changed = false;
+
+        for(String line : readLines(channel)) {
+            String mapped = mapper.map(line, Event.fromFileString(line));
+
+            if(mapped == null) {
+                changed = true;
+                continue;
+            }
+
+            changed |= !mapped.equals(line);
+            result.append(mapped).append(System.lineSeparator());
+        }
+
+        if(changed) replaceContent(lockFile, result.toString());
+
+        return changed;
+    }
+
+    /**
+     * Замінює весь вміст файлу, не лишаючи після збою напівзаписаного файлу:
+     * новий вміст пишеться у тимчасовий файл поруч, скидається на диск і атомарно
+     * підміняє файл подій. Блокування тримається на окремому файлі, тож підміна його не знімає.
+     */
+    private void replaceContent(FileChannel lockFile, String content) throws IOException {
+        Path path = Path.of(filePath).toAbsolutePath().normalize();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        beginChange(lockFile, true);
+
+        try {
+            try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(channel, content, 0);
+                if(durability != DurabilityMode.NONE) channel.force(true);
+            }
+
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if(durability != DurabilityMode.NONE) forceDirectory(path.getParent());
+        } finally {
+            Files.deleteIfExists(temp);
+            endChange(lockFile);
+        }
+    }
+
+    /**
+     * Скидає на диск запис каталогу, щоб перейменування пережило збій ОС.
+     * Не на всіх системах каталог можна відкрити (Windows) - тоді лише перейменування.
+     */
+    private static void forceDirectory(Path directory) {
+        if(directory == null) return;
+
+        try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch(IOException e) {
+            // Файлова система не дозволяє fsync каталогу
+        }
+    }
+
+    /**
+     * Позначає початок зміни вже записаних байтів: {@code edits} стає непарним (і {@code rewrites}
+     * збільшується для повного перезапису). Лічильник потрапляє на диск раніше за саму зміну,
+     * тож після збою посеред зміни контрольна точка зі старим значенням вже не прийметься.
+     */
+    private void beginChange(FileChannel lockFile, boolean rewrite) throws IOException {
+        Generation current = readGeneration(lockFile);
+        writeGeneration(lockFile, new Generation(current.rewrites() + (rewrite ? 1 : 0), current.edits() + 1));
+    }
+
+    /**
+     * Позначає кінець зміни: {@code edits} знову парне.
+     */
+    private void endChange(FileChannel lockFile) throws IOException {
+        Generation current = readGeneration(lockFile);
+        writeGeneration(lockFile, new Generation(current.rewrites(), current.edits() + 1));
+    }
+
+    private static Generation readGeneration(FileChannel lockFile) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(GENERATION_BYTES);
+
+        while(buffer.hasRemaining()) {
+            if(lockFile.read(buffer, buffer.position()) < 0) break;
+        }
+
+        // Новий файл блокування - змін ще не було
+        if(buffer.hasRemaining()) return new Generation(0, 0);
+
+        buffer.flip();
+        return new Generation(buffer.getLong(), buffer.getLong());
+    }
+
+    private void writeGeneration(FileChannel lockFile, Generation generation) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(GENERATION_BYTES)
+                .putLong(generation.rewrites())
+                .putLong(generation.edits())
+                .flip();
+
+        while(buffer.hasRemaining()) {
+            lockFile.write(buffer, buffer.position());
+        }
+
+        if(durability != DurabilityMode.NONE) lockFile.force(false);
+    }
+
+    /**
+     * @return Ідентифікатор з позначки видалення {@code ~id} або 0, якщо рядок не є такою позначкою.
+     */
+    private static long tombstoneId(String line) {
+        String trimmed = line.trim();
+        if(trimmed.isEmpty() || trimmed.charAt(0) != TOMBSTONE_MARK) return 0;
+
+        try {
+            return Long.parseLong(trimmed.substring(1).trim());
+        } catch(NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Записує текст з вказаної позиції.
+     * @return Позиція одразу після записаного.
+     */
+    private static long writeFully(FileChannel channel, String text, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+
+        while(buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+
+        return position;
+    }
+
+    /**
+     * Знаходить останній виданий (або зарезервований) ідентифікатор, читаючи файл з кінця
+     * блоками по {@value #READ_BUFFER_SIZE} байтів.
+     * Події старого формату після останнього ідентифікатора резервують по ідентифікатору,
+     * щоб при міграції отримати ідентифікатори, менші за нові ({@code 1..n} для файлу старого формату).
+     * Зазвичай достатньо останнього блоку; файл старого формату читається повністю, але лише раз:
+     * після першого запису в кінці файлу вже є ідентифікатор.
+     */
+    private static long lastAssignedId(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        byte[] partial = new byte[0];   // початок рядка, що почався лівіше вже прочитаного блоку
+        long end = channel.size();
+        long legacyCount = 0;
+
+        while(end > 0) {
+            long start = Math.max(0, end - buffer.capacity());
+            buffer.clear().limit((int) (end - start));
+
+            while(buffer.hasRemaining()) {
+                if(channel.read(buffer, start + buffer.position()) < 0) break;
+            }
+
+            byte[] data = Arrays.copyOf(buffer.array(), buffer.position() + partial.length);
+            System.arraycopy(partial, 0, data, buffer.position(), partial.length);
+
+            // Рядки справа наліво; перший шматок блоку - рядок, що може продовжуватись лівіше
+            int lineEnd = data.length;
+            for(int i = data.length - 1; i >= 0; i--) {
+                if(data[i] != '\n') continue;
+
+                String line = new String(data, i + 1, lineEnd - i - 1, StandardCharsets.UTF_8).trim();
+                lineEnd = i;
+
+                long id = recordId(line);
+                if(id > 0) return id + legacyCount;
+                if(id == 0) legacyCount++;
+            }
+
+            partial = Arrays.copyOf(data, lineEnd);
+            end = start;
+        }
+
+        long id = recordId(new String(partial, StandardCharsets.UTF_8).trim());
+        if(id > 0) return id + legacyCount;
+
+        return id == 0 ? legacyCount + 1 : legacyCount;
+    }
+
+    /**
+     * @return Ідентифікатор події або позначки видалення, 0 для події без ідентифікатора,
+     *         -1 для рядка, що не є ні подією, ні позначкою.
+     */
+    private static long recordId(String line) {
+        long tombstone = tombstoneId(line);
+        if(tombstone > 0) return tombstone;
+
+        Event event = Event.fromFileString(line);
+
+        return event != null ? event.getId() : -1;
+    }
+
+    /**
+     * Знаходить початок рядка, що закінчується перед {@code end} (байт {@code end - 1} вважається частиною рядка).
+     */
+    private static long findLineStart(FileChannel channel, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = end - 1;
+
+        while(position > 0) {
+            long start = Math.max(0, position - buffer.capacity());
+            buffer.clear().limit((int) (position - start));
+            channel.read(buffer, start);
+
+            for(int i = buffer.position() - 1; i >= 0; i--) {
+                if(buffer.get(i) == '\n') return start + i + 1;
+            }
+
+            position = start;
+        }
+
+        return 0;
+    }
+
+    private static boolean isEventLine(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(end - start, READ_BUFFER_SIZE));
+        if(end - start > buffer.capacity()) return false;
+
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, start + buffer.position()) < 0) return false;
+        }
+
+        return Event.fromFileString(new String(buffer.array(), StandardCharsets.UTF_8)) != null;
+    }
+
+    private static byte readByte(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        channel.read(buffer, position);
+
+        return buffer.get(0);
+    }
+
+    private static boolean containsZero(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+        for(long position = start; position < end; position += buffer.capacity()) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+            channel.read(buffer, position);
+
+            for(int i = 0; i < buffer.position(); i++) {
+                if(buffer.get(i) == 0) return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Читає повний рядок (без переведення рядка), що починається зі зміщення.
+     * @return Байти рядка або null, якщо повного рядка немає.
+     */
+    private static byte[] readLineAt(FileChannel channel, long offset) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = offset;
+
+        while(channel.read(buffer, position) > 0) {
+            byte[] chunk = buffer.array();
+            int limit = buffer.position();
+
+            for(int i = 0; i < limit; i++) {
+                if(chunk[i] == '\n') {
+                    line.write(chunk, 0, i);
+                    return line.toByteArray();
+                }
+            }
+
+            line.write(chunk, 0, limit);
+            position += limit;
+            buffer.clear();
+        }
+
+        return null;
+    }
 }
@@ -0,0 +1,129 @@
+package eventlogger.server;
+
+import eventlogger.service.EventService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Спільний записувач для багатьох з'єднань.
+ * <p>
+ * З'єднання лише кладуть описи у чергу, а один потік забирає з неї все, що накопичилось
+ * (до {@value #MAX_BATCH_SIZE} подій), і записує це одним викликом {@link EventService#logNewEvents(List)}.
+ * Чим більше клієнтів пишуть одночасно, тим більші пакети і тим менше відкриттів файлу на подію.
+ * Черга обмежена, тож при перевантаженні з'єднання просто чекають на місце в ній.
+ */
+public class BatchingEventWriter implements AutoCloseable {
+    private static final int MAX_BATCH_SIZE = 4096;
+    private static final int QUEUE_CAPACITY = 64 * 1024;
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final EventService eventService;
+    private final BlockingQueue<PendingEvent> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    /**
+     * Подія, що чекає на запис.
+     * @param description Опис події.
+     * @param result Завершується true після запису у файл, false - якщо запис не вдався.
+     */
+    private record PendingEvent(String description, CompletableFuture<Boolean> result) {}
+
+    public BatchingEventWriter(EventService eventService) {
+        this.eventService = eventService;
+        this.writerThread = new Thread(this::writeLoop, "event-writer");
+        this.writerThread.start();
+    }
+
+    /**
+     * Ставить подію в чергу на запис. Блокує, якщо черга заповнена.
+     * @param description Опис події.
+     * @return Результат, що завершиться після запису пакета з цією подією.
+     */
+    public CompletableFuture<Boolean> submit(String description) throws InterruptedException {
+        if(description == null || description.trim().isEmpty() || !running) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        PendingEvent pending = new PendingEvent(description, result);
+        queue.put(pending);
+
+        // Записувач міг зупинитись, поки ми чекали на місце в черзі
+        if(!running && queue.remove(pending)) result.complete(false);
+
+        return result;
+    }
+
+    private void writeLoop() {
+        List<PendingEvent> batch = new ArrayList<>(MAX_BATCH_SIZE);
+
+        while(true) {
+            PendingEvent first;
+
+            // Не перериваємо потік при зупинці: переривання закрило б файл посеред запису
+            try {
+                first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch(InterruptedException e) {
+                first = null;
+            }
+
+            if(first == null) {
+                if(!running) return;
+                continue;
+            }
+
+            batch.add(first);
+            queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<PendingEvent> batch) {
+        List<String> descriptions = new ArrayList<>(batch.size());
+
+        for(PendingEvent pending : batch) {
+            descriptions.add(pending.description());
+        }
+
+        boolean saved;
+
+        // Потік запису один на всіх: виняток тут не має його зупинити, інакше всі з'єднання зависнуть
+        try {
+            saved = eventService.logNewEvents(descriptions) >= 0;
+        } catch(RuntimeException e) {
+            System.err.println("Error writing event batch: " + e);
+            saved = false;
+        }
+
+        for(PendingEvent pending : batch) {
+            pending.result().complete(saved);
+        }
+    }
+
+    /**
+     * Зупиняє записувач, попередньо записавши всі події з черги.
+     */
+    @Override
+    public void close() {
+        running = false;
+
+        try {
+            writerThread.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Те, що встигли покласти після зупинки потоку
+        PendingEvent pending;
+        while((pending = queue.poll()) != null) {
+            pending.result().complete(false);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package eventlogger.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Читає рядки UTF-8 з обмеженням довжини, не накопичуючи в пам'яті більше за ліміт.
+ * <p>
+ * На відміну від {@link java.io.BufferedReader#readLine()}, клієнт, що шле дані без переведення рядка,
+ * не може вичерпати пам'ять: надто довгий рядок пропускається до кінця, а {@link #wasTooLong()} повідомляє про це.
+ */
+class BoundedLineReader {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final int maxLineBytes;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final byte[] line;
+    private int position;
+    private int limit;
+    private boolean tooLong;
+
+    /**
+     * @param in Потік з'єднання.
+     * @param maxLineBytes Максимальна довжина рядка у байтах (без переведення рядка).
+     */
+    BoundedLineReader(InputStream in, int maxLineBytes) {
+        this.in = in;
+        this.maxLineBytes = maxLineBytes;
+        this.line = new byte[maxLineBytes];
+    }
+
+    /**
+     * Читає наступний рядок.
+     * @return Рядок без переведення рядка, порожній рядок, якщо він перевищив ліміт, або null у кінці потоку.
+     */
+    String readLine() throws IOException {
+        int length = 0;
+        tooLong = false;
+
+        while(true) {
+            if(position == limit) {
+                limit = in.read(buffer);
+                position = 0;
+
+                if(limit <= 0) {
+                    limit = 0;
+                    // Останній рядок без переведення рядка
+                    return length > 0 || tooLong ? finish(length) : null;
+                }
+            }
+
+            byte b = buffer[position++];
+            if(b == '\n') return finish(length);
+
+            if(length < maxLineBytes) line[length++] = b;
+            else tooLong = true;
+        }
+    }
+
+    /**
+     * @return true, якщо останній прочитаний рядок перевищив ліміт і був відкинутий.
+     */
+    boolean wasTooLong() {
+        return tooLong;
+    }
+
+    /**
+     * @return true, якщо наступні дані вже надійшли і читання не блокуватиме.
+     */
+    boolean ready() throws IOException {
+        return position < limit || in.available() > 0;
+    }
+
+    private String finish(int length) {
+        if(tooLong) return "";
+        if(length > 0 && line[length - 1] == '\r') length--;
+
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,224 @@
+package eventlogger.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Вбудований сервер для прийому подій від локальних клієнтів.
+ * <p>
+ * TCP-протокол рядковий: кожен рядок - опис події, на кожен рядок сервер відповідає
+ * {@code OK} або {@code ERR}, у тому ж порядку. Рядки довші за {@value #MAX_LINE_BYTES} байтів відхиляються. Клієнт може надсилати рядки, не чекаючи відповідей -
+ * усе, що вже надійшло (але не більше {@value #MAX_PENDING_LINES} рядків), ставиться в чергу разом
+ * і підтверджується однією порцією.
+ * <p>
+ * HTTP (необов'язковий): {@code POST /events}, тіло - описи подій по одному на рядок,
+ * відповідь з кількістю прийнятих, відхилених і не записаних подій: {@code 200} - усі прийняті,
+ * {@code 400} - є відхилені рядки (задовгі), {@code 500} - запис не вдався.
+ * <p>
+ * Кожне з'єднання обробляється у власному віртуальному потоці, а запис у файл іде
+ * через спільний {@link BatchingEventWriter}. Сервер слухає лише loopback-інтерфейс.
+ */
+public class IngestionServer implements AutoCloseable {
+    private static final int ACCEPT_BACKLOG = 4096;
+    private static final int MAX_LINE_BYTES = 8192;
+
+    // Скільки рядків одного з'єднання чекають на запис, перш ніж сервер дочекається і відповість на них
+    private static final int MAX_PENDING_LINES = 4096;
+
+    private final BatchingEventWriter writer;
+    private final ServerSocket serverSocket;
+    private final HttpServer httpServer;
+    private final ExecutorService connectionExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final Thread acceptThread;
+
+    /**
+     * Запускає сервер.
+     * @param writer Спільний записувач подій.
+     * @param tcpPort Порт TCP-протоколу (0 - будь-який вільний).
+     * @param httpPort Порт HTTP або -1, якщо HTTP не потрібен.
+     * @throws IOException Якщо порт зайнятий.
+     */
+    public IngestionServer(BatchingEventWriter writer, int tcpPort, int httpPort) throws IOException {
+        this.writer = writer;
+
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        this.serverSocket = new ServerSocket(tcpPort, ACCEPT_BACKLOG, loopback);
+
+        if(httpPort >= 0) {
+            this.httpServer = HttpServer.create(new InetSocketAddress(loopback, httpPort), ACCEPT_BACKLOG);
+            this.httpServer.setExecutor(connectionExecutor);
+            this.httpServer.createContext("/events", this::handleHttp);
+            this.httpServer.start();
+        } else {
+            this.httpServer = null;
+        }
+
+        this.acceptThread = new Thread(this::acceptLoop, "ingestion-accept");
+        this.acceptThread.start();
+    }
+
+    public int tcpPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return Порт HTTP або -1, якщо HTTP вимкнено.
+     */
+    public int httpPort() {
+        return httpServer != null ? httpServer.getAddress().getPort() : -1;
+    }
+
+    private void acceptLoop() {
+        while(!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+
+                connections.add(socket);
+                connectionExecutor.execute(() -> handleConnection(socket));
+            } catch(IOException e) {
+                if(!serverSocket.isClosed()) {
+                    System.err.println("Error accepting connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Обслуговує одне TCP-з'єднання до його закриття клієнтом.
+     * @param socket Сокет клієнта.
+     */
+    private void handleConnection(Socket socket) {
+        try(socket;
+            BufferedWriter replies = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+
+            BoundedLineReader reader = new BoundedLineReader(socket.getInputStream(), MAX_LINE_BYTES);
+            List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+            String line;
+
+            while((line = reader.readLine()) != null) {
+                pending.add(submit(line, reader));
+
+                // Рядки, що вже надійшли, ставимо в чергу разом і підтверджуємо однією порцією
+                if(reader.ready() && pending.size() < MAX_PENDING_LINES) continue;
+
+                for(CompletableFuture<Boolean> result : pending) {
+                    replies.write(result.join() ? "OK" : "ERR");
+                    replies.newLine();
+                }
+
+                replies.flush();
+                pending.clear();
+            }
+        } catch(IOException e) {
+            // Клієнт відключився - нічого робити
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private void handleHttp(HttpExchange exchange) throws IOException {
+        try(exchange) {
+            if(!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().add("Allow", "POST");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+            int accepted = 0;
+            int rejected = 0;
+            int failed = 0;
+
+            try(InputStream body = exchange.getRequestBody()) {
+                BoundedLineReader reader = new BoundedLineReader(body, MAX_LINE_BYTES);
+                String line;
+
+                while((line = reader.readLine()) != null) {
+                    if(reader.wasTooLong()) {
+                        rejected++;
+                    } else if(!line.isBlank()) {
+                        pending.add(writer.submit(line));
+                    }
+
+                    if(pending.size() < MAX_PENDING_LINES) continue;
+
+                    int written = countAccepted(pending);
+                    accepted += written;
+                    failed += pending.size() - written;
+                    pending.clear();
+                }
+            }
+
+            int written = countAccepted(pending);
+            accepted += written;
+            failed += pending.size() - written;
+
+            byte[] body = ("{\"accepted\":" + accepted + ",\"rejected\":" + rejected + ",\"failed\":" + failed + "}\n")
+                    .getBytes(StandardCharsets.UTF_8);
+
+            // Задовгі рядки - помилка клієнта, не записані події - сервера
+            int status = failed > 0 ? 500 : rejected > 0 ? 400 : 200;
+
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int countAccepted(List<CompletableFuture<Boolean>> results) {
+        int accepted = 0;
+
+        for(CompletableFuture<Boolean> result : results) {
+            if(result.join()) accepted++;
+        }
+
+        return accepted;
+    }
+
+    private CompletableFuture<Boolean> submit(String line, BoundedLineReader reader) throws InterruptedException {
+        if(reader.wasTooLong()) return CompletableFuture.completedFuture(false);
+
+        return writer.submit(line);
+    }
+
+    /**
+     * Зупиняє прийом з'єднань і закриває відкриті.
+     * Записувач не закривається - він належить тому, хто його створив.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        if(httpServer != null) httpServer.stop(0);
+
+        try {
+            acceptThread.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for(Socket socket : connections) {
+            socket.close();
+        }
+
+        connectionExecutor.close();
+    }
+}
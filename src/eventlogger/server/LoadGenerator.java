@@ -0,0 +1,102 @@
+package eventlogger.server;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Генератор навантаження для {@link IngestionServer}.
+ * <p>
+ * Відкриває задану кількість одночасних TCP-з'єднань (кожне у віртуальному потоці),
+ * надсилає через кожне задану кількість подій, чекаючи на {@code OK} після кожної,
+ * та друкує пропускну здатність.
+ * <p>
+ * Використання: {@code LoadGenerator <port> [connections] [eventsPerConnection]}
+ * <p>
+ * Для десятків тисяч з'єднань може знадобитись збільшити ліміт відкритих файлів ({@code ulimit -n}).
+ */
+public class LoadGenerator {
+    private static final int DEFAULT_CONNECTIONS = 1000;
+    private static final int DEFAULT_EVENTS_PER_CONNECTION = 100;
+
+    public static void main(String[] args) throws InterruptedException {
+        if(args.length < 1) {
+            System.err.println("Usage: LoadGenerator <port> [connections] [eventsPerConnection]");
+            System.exit(2);
+        }
+
+        int port = Integer.parseInt(args[0]);
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CONNECTIONS;
+        int eventsPerConnection = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_EVENTS_PER_CONNECTION;
+
+        AtomicLong acknowledged = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        CountDownLatch connected = new CountDownLatch(connections);
+        CountDownLatch start = new CountDownLatch(1);
+
+        long startTime;
+        try(ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for(int i = 0; i < connections; i++) {
+                int client = i;
+                executor.execute(() -> runClient(port, client, eventsPerConnection,
+                        connected, start, acknowledged, failed));
+            }
+
+            // Міряємо лише відправку, не встановлення з'єднань
+            connected.await();
+            startTime = System.nanoTime();
+            start.countDown();
+        }
+
+        double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+
+        System.out.printf("Connections: %d, events acknowledged: %d, failed: %d%n",
+                connections, acknowledged.get(), failed.get());
+        System.out.printf("Elapsed: %.2f s, throughput: %.0f events/s%n",
+                seconds, acknowledged.get() / seconds);
+    }
+
+    /**
+     * Один клієнт: з'єднується, чекає на спільний старт і надсилає події по одній.
+     */
+    private static void runClient(int port, int client, int events, CountDownLatch connected, CountDownLatch start,
+                                  AtomicLong acknowledged, AtomicLong failed) {
+        Socket socket;
+
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        } catch(IOException e) {
+            failed.addAndGet(events);
+            connected.countDown();
+            return;
+        }
+
+        connected.countDown();
+        int sent = 0;
+
+        try(socket;
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+
+            start.await();
+
+            for(; sent < events; sent++) {
+                writer.write("load client " + client + " event " + sent);
+                writer.newLine();
+                writer.flush();
+
+                if("OK".equals(reader.readLine())) acknowledged.incrementAndGet();
+                else failed.incrementAndGet();
+            }
+        } catch(IOException e) {
+            failed.addAndGet(events - sent);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
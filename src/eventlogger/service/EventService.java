@@ -1,20 +1,45 @@
 package eventlogger.service;
 
+import eventlogger.repository.CheckpointStore;
+import eventlogger.repository.EventIndex;
 import eventlogger.repository.EventRepository;
 import eventlogger.model.Event;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
 
-public class EventService {
+public class EventService implements AutoCloseable {
     private final EventRepository repository;
+    private final CheckpointStore checkpointStore;
 
+    // Розсилка щойно збережених подій підписникам
+    private final SubmissionPublisher<EventTailPublisher.TailedEvent> livePublisher =
+            new SubmissionPublisher<>(ForkJoinPool.commonPool(), LIVE_BUFFER_SIZE);
+
+    // Зведений стан файлу; null - потрібне повне читання. Див. refreshIndex()
+    private EventIndex index;
+    private int eventsSinceCheckpoint;
+    private boolean checkpointDirty;
+
+    private static final int LIVE_BUFFER_SIZE = 16 * 1024;
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+    private static final int CHECKPOINT_INTERVAL = 10_000;
 
     public EventService(EventRepository repository) {
         this.repository = repository;
+
+        // Обірваний останній запис (збій посеред запису) прибираємо до будь-якого читання
+        repository.recover();
+
+        this.checkpointStore = new CheckpointStore(repository.filePath());
+        this.index = checkpointStore.load();
     }
 
     /**
@@ -26,9 +51,112 @@ public class EventService {
         if(description == null || description.trim().isEmpty()) {
             return false;
         }
-        Event event = new Event(description.trim());
+        return importEvents(List.of(new Event(description.trim()))) == 1;
+    }
+
+    /**
+     * Логує пакет нових подій за одне звернення до репозиторію.
+     * Порожні описи пропускаються так само, як у {@link #logNewEvent(String)}.
+     * @param descriptions Описи подій.
+     * @return Кількість збережених подій або -1, якщо запис не вдався.
+     */
+    public int logNewEvents(List<String> descriptions) {
+        List<Event> events = new ArrayList<>();
+
+        for(String description : descriptions) {
+            if(description != null && !description.trim().isEmpty()) {
+                events.add(new Event(description.trim()));
+            }
+        }
+
+        return importEvents(events);
+    }
+
+    /**
+     * Імпортує вже готові події (з власним часом) за одне звернення до репозиторію.
+     * Події отримують нові ідентифікатори.
+     * @param events Події для імпорту.
+     * @return Кількість збережених подій або -1, якщо запис не вдався.
+     */
+    public int importEvents(List<Event> events) {
+        if(events.isEmpty()) return 0;
+
+        // Покоління - до запису: перезапис між ними дасть підписнику помилку, а не хибне зміщення
+        long generation = repository.generation().rewrites();
+        List<EventTailPublisher.TailedEvent> written = new ArrayList<>(events.size());
+
+        List<Event> saved = repository.saveAll(events,
+                (event, start, end) -> written.add(new EventTailPublisher.TailedEvent(event, start, end, generation)));
+        if(saved == null) return -1;
+
+        advanceIndex(written);
+
+        for(EventTailPublisher.TailedEvent event : written) {
+            publish(event);
+        }
+
+        return saved.size();
+    }
+
+    /**
+     * Підписка на події, збережені через цей сервіс, після того як вони записані у файл.
+     * <p>
+     * Кожен підписник отримує події лише за запитом ({@link Flow.Subscription#request(long)}).
+     * Запис подій не чекає на повільних підписників: якщо буфер підписника
+     * ({@value #LIVE_BUFFER_SIZE} подій) заповнений, підписка скасовується і він отримує {@code onError}.
+     * Кожна подія приходить зі своїм місцем у файлі, тож продовжити без втрат можна через
+     * {@link #tail(long, long)} з {@code nextOffset} та {@code generation} останньої отриманої події.
+     * @return Видавець нових подій з їхніми зміщеннями у файлі.
+     */
+    public Flow.Publisher<EventTailPublisher.TailedEvent> liveEvents() {
+        return subscriber -> livePublisher.subscribe(new LiveSubscriber(subscriber));
+    }
+
+    /**
+     * Розсилає вже збережену подію. Подія на диску, тож помилки розсилки не мають впливати на запис.
+     */
+    private void publish(EventTailPublisher.TailedEvent event) {
+        if(livePublisher.isClosed()) return;
+
+        try {
+            // Без очікування: скасований підписник, що застряг в onNext, лишається у видавця,
+            // і кожен offer з тайм-аутом чекав би на нього повний тайм-аут
+            livePublisher.offer(event, (subscriber, dropped) -> {
+                ((LiveSubscriber) subscriber).lagged();
+                return false;
+            });
+        } catch(IllegalStateException e) {
+            // Закрито паралельно з записом - розсилати вже нікому
+        }
+    }
+
+    /**
+     * Слідкує за дописуванням у файл подій (у тому числі іншими процесами).
+     * @param fromOffset Байтове зміщення, з якого почати: 0 - з початку файлу,
+     *                   {@link EventTailPublisher.TailedEvent#nextOffset()} - продовжити після отриманої події.
+     * @param generation Покоління файлу, в якому отримано зміщення: {@link EventTailPublisher.TailedEvent#generation()}
+     *                   або {@link #currentGeneration()}. Якщо файл відтоді переписано, підписник отримає {@code onError}.
+     * @return Видавець подій з їхніми зміщеннями у файлі.
+     */
+    public EventTailPublisher tail(long fromOffset, long generation) {
+        return new EventTailPublisher(repository, fromOffset, generation);
+    }
+
+    /**
+     * Поточне покоління файлу подій: змінюється при кожному повному перезаписі, після якого
+     * старі зміщення недійсні. Береться до {@link #currentOffset()}.
+     * @return Лічильник повних перезаписів.
+     */
+    public long currentGeneration() {
+        return repository.generation().rewrites();
+    }
 
-        return repository.save(event);
+    /**
+     * Зміщення кінця файлу подій, щоб стежити лише за новими подіями.
+     * @return Розмір файлу у байтах.
+     */
+    public long currentOffset() {
+        return repository.size();
     }
 
     public List<Event> getAllEvents() {
@@ -44,7 +172,24 @@ public class EventService {
         try {
             LocalDate date = LocalDate.parse(dateString, DATE_FORMATTER);
 
-            return repository.findByDate(date);
+            return findInRange(date, date);
+        } catch(DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Шукає події у проміжку дат (включно). Будь-яка з меж може бути відсутня.
+     * @param fromString Початкова дата у форматі dd-MM-yyyy або null.
+     * @param toString Кінцева дата у форматі dd-MM-yyyy або null.
+     * @return Список подій у проміжку або null, якщо формат дати некоректний.
+     */
+    public List<Event> searchEventsBetween(String fromString, String toString) {
+        try {
+            LocalDate from = fromString == null ? null : LocalDate.parse(fromString, DATE_FORMATTER);
+            LocalDate to = toString == null ? null : LocalDate.parse(toString, DATE_FORMATTER);
+
+            return findInRange(from, to);
         } catch(DateTimeParseException e) {
             return null;
         }
@@ -54,23 +199,90 @@ public class EventService {
      * Генерує статистику подій.
      * @return Об'єкт з статистикою подій.
      */
-    public EventStatistics getStatistics() {
-        int totalCount = repository.count();
-        int todayCount = repository.findToday().size();
-        Event firstEvent = repository.findFirst();
-        Event lastEvent = repository.findLast();
+    public synchronized EventStatistics getStatistics() {
+        EventIndex current = refreshIndex();
+
+        return new EventStatistics(current.count(), current.countOn(LocalDate.now()),
+                current.firstEvent(), current.lastEvent());
+    }
+
+    /**
+     * Знаходить подію за ідентифікатором без читання всього файлу.
+     * @param id Ідентифікатор події.
+     * @return Подія або null, якщо її немає.
+     */
+    public synchronized Event getEventById(long id) {
+        long offset = refreshIndex().offsetOf(id);
+        if(offset < 0) return null;
+
+        Event event = repository.readAt(offset);
+
+        return event != null && event.getId() == id ? event : null;
+    }
+
+    /**
+     * Видаляє подію за ідентифікатором. Ідентифікатор не зсувається при записі інших подій,
+     * тож видаляється саме та подія, яку обрали.
+     * @param id Ідентифікатор події.
+     * @return true, якщо успішно видалено, інакше false.
+     */
+    public synchronized boolean deleteEventById(long id) {
+        EventIndex current = refreshIndex();
+        long offset = current.offsetOf(id);
+        if(offset < 0) return false;
+
+        // Збережена контрольна точка застаріває, щойно позначка видалення потрапить у файл
+        checkpointStore.delete();
+        checkpointDirty = true;
+
+        EventRepository.Generation before = repository.generation();
+        Event deleted = repository.deleteById(id, offset);
+        if(deleted == null) return false;
+
+        // Між оновленням стану і видаленням файл змінював ще хтось - стан будується заново
+        long edits = repository.generation().edits();
+        if(before.edits() != current.generation() || edits != before.edits() + 2) {
+            index = null;
+            return true;
+        }
+
+        current.remove(deleted);
+
+        if(current.firstEvent() == null || current.lastEvent() == null) {
+            current.setBounds(readAtOrNull(current.firstLiveOffset()), readAtOrNull(current.lastLiveOffset()));
+        }
+
+        // Позначка видалення могла потрапити в байти, за якими перевіряється файл
+        current.commit(current.committedOffset(), repository.checksumBefore(current.committedOffset()), edits);
+
+        return true;
+    }
+
+    /**
+     * Видаляє подію зі списку {@link #getAllEvents()}: за ідентифікатором, а подію
+     * старого формату (без ідентифікатора) - за часом та описом.
+     * @param event Подія для видалення.
+     * @return true, якщо успішно видалено, інакше false.
+     */
+    public synchronized boolean deleteEvent(Event event) {
+        if(event.getId() > 0) return deleteEventById(event.getId());
 
-        return new EventStatistics(totalCount, todayCount, firstEvent, lastEvent);
+        invalidateIndex();
+        return repository.deleteLegacy(event);
     }
 
     /**
      * Видаляє подію за номером (не індексом в лісті, а саме номером події).
      * @param eventIndex номер події.
      * @return true, якщо успішно видалено, інакше false.
+     * @deprecated Номер зсувається, якщо інший процес тим часом змінив файл;
+     *             використовуйте {@link #deleteEventById(long)}.
      */
-    public boolean deleteEvent(int eventIndex) {
+    @Deprecated
+    public synchronized boolean deleteEvent(int eventIndex) {
         if(eventIndex < 1) return false;
 
+        invalidateIndex();
         return repository.deleteByIndex(eventIndex - 1);
     }
 
@@ -78,12 +290,222 @@ public class EventService {
      * Видаляє всі події
      * @return true якщо успішно
      */
-    public boolean deleteAllEvents() {
+    public synchronized boolean deleteAllEvents() {
+        invalidateIndex();
         return repository.deleteAll();
     }
 
-    public boolean hasEvents() {
-        return repository.hasEvents();
+    /**
+     * Ущільнює файл: перезаписує його лише коректними подіями,
+     * відкидаючи порожні та пошкоджені рядки і позначки видалених подій.
+     * Вже видані ідентифікатори не змінюються.
+     * @return Кількість подій, що залишились, або -1, якщо перезапис не вдався.
+     */
+    public synchronized int compact() {
+        invalidateIndex();
+        return repository.compact();
+    }
+
+    /**
+     * Присвоює ідентифікатори подіям старого формату. Інші рядки файлу та вже видані
+     * ідентифікатори лишаються як є, див. {@link EventRepository#migrate()}.
+     * @return Результат міграції або null, якщо перезапис не вдався.
+     */
+    public synchronized EventRepository.Migration migrate() {
+        invalidateIndex();
+        return repository.migrate();
+    }
+
+    /**
+     * @return true, якщо у файлі є події без ідентифікатора (до них не можна звернутися за id).
+     */
+    public synchronized boolean hasLegacyEvents() {
+        return refreshIndex().legacyCount() > 0;
+    }
+
+    public synchronized boolean hasEvents() {
+        return refreshIndex().count() > 0;
+    }
+
+    /**
+     * Завершує розсилку нових подій підписникам ({@code onComplete})
+     * та зберігає контрольну точку, якщо стан змінився.
+     */
+    @Override
+    public synchronized void close() {
+        livePublisher.close();
+
+        if(checkpointDirty && index != null) saveCheckpoint();
+    }
+
+    /*
+     * INDEX
+     * */
+
+    /**
+     * Доводить зведений стан до актуального: дочитує лише ту частину файлу,
+     * що дописана після останнього прочитаного зміщення. Якщо прочитана частина файлу
+     * змінилась (або стану ще немає), файл читається з початку.
+     * @return Актуальний стан.
+     */
+    private EventIndex refreshIndex() {
+        // Лічильник береться до читання: зміна посеред читання дасть інше значення наступного разу
+        EventRepository.Generation generation = repository.generation();
+
+        if(index == null || !matchesFile(index, generation)) {
+            index = new EventIndex();
+            checkpointDirty = true;
+        }
+
+        int before = index.count();
+        long offset = repository.scanFrom(index.committedOffset(), index::add);
+
+        if(offset != index.committedOffset() || generation.edits() != index.generation()) {
+            index.commit(offset, repository.checksumBefore(offset), generation.edits());
+            checkpointDirty = true;
+        }
+
+        eventsSinceCheckpoint += index.count() - before;
+        if(eventsSinceCheckpoint >= CHECKPOINT_INTERVAL) saveCheckpoint();
+
+        return index;
+    }
+
+    /**
+     * Доводить стан до актуального після власного запису: якщо записане йде одразу після
+     * прочитаної частини файлу, події додаються без читання файлу, інакше - {@link #refreshIndex()}.
+     * Так контрольна точка оновлюється кожні {@value #CHECKPOINT_INTERVAL} подій і тоді,
+     * коли сервіс лише пише (імпорт, сервер).
+     */
+    private synchronized void advanceIndex(List<EventTailPublisher.TailedEvent> written) {
+        EventRepository.Generation generation = repository.generation();
+
+        if(index == null || index.committedOffset() != written.getFirst().offset() || !matchesFile(index, generation)) {
+            refreshIndex();
+            return;
+        }
+
+        for(EventTailPublisher.TailedEvent event : written) {
+            index.add(event.event(), event.offset(), event.nextOffset());
+        }
+
+        long offset = written.getLast().nextOffset();
+        index.commit(offset, repository.checksumBefore(offset), generation.edits());
+        checkpointDirty = true;
+
+        eventsSinceCheckpoint += written.size();
+        if(eventsSinceCheckpoint >= CHECKPOINT_INTERVAL) saveCheckpoint();
+    }
+
+    private Event readAtOrNull(long offset) {
+        return offset >= 0 ? repository.readAt(offset) : null;
+    }
+
+    /**
+     * Стан дійсний, якщо файл не змінювали на місці (видалення, перезапис) з моменту його побудови
+     * і прочитана частина файлу не змінилась.
+     */
+    private boolean matchesFile(EventIndex candidate, EventRepository.Generation generation) {
+        long offset = candidate.committedOffset();
+
+        return generation.stable() && generation.edits() == candidate.generation()
+                && repository.size() >= offset && repository.checksumBefore(offset) == candidate.fingerprint();
+    }
+
+    /**
+     * Шукає події в проміжку дат, читаючи файл лише з першої події проміжку
+     * і лише до останньої з них.
+     */
+    private synchronized List<Event> findInRange(LocalDate from, LocalDate to) {
+        List<Event> found = new ArrayList<>();
+        EventIndex.DateEntry range = refreshIndex().range(from, to);
+
+        if(range == null) return found;
+
+        repository.scanFrom(range.firstOffset(), (event, start, end) -> {
+            LocalDate date = event.getDateTime().toLocalDate();
+
+            if((from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to))) {
+                found.add(event);
+            }
+
+            return found.size() < range.count();
+        });
+
+        return found;
+    }
+
+    /**
+     * Скидає стан після перезапису файлу. Застарілу контрольну точку видаляємо одразу,
+     * щоб її не підхопив наступний запуск.
+     */
+    private void invalidateIndex() {
+        index = null;
+        checkpointStore.delete();
+    }
+
+    private void saveCheckpoint() {
+        if(checkpointStore.save(index)) {
+            eventsSinceCheckpoint = 0;
+            checkpointDirty = false;
+        }
+    }
+
+    /**
+     * Обгортка підписника {@link #liveEvents()}: дозволяє відключити підписника, що відстає,
+     * не блокуючи потік запису.
+     */
+    private static final class LiveSubscriber implements Flow.Subscriber<EventTailPublisher.TailedEvent> {
+        private final Flow.Subscriber<? super EventTailPublisher.TailedEvent> delegate;
+        private volatile Flow.Subscription subscription;
+        private volatile boolean failed;
+
+        private LiveSubscriber(Flow.Subscriber<? super EventTailPublisher.TailedEvent> delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * Викликається потоком запису: скасовує підписку, а {@code onError} доставляє в іншому потоці,
+         * під тим самим монітором, що й решту сигналів, щоб не чекати на зайнятого підписника.
+         */
+        private void lagged() {
+            if(failed) return;
+
+            failed = true;
+
+            Flow.Subscription current = subscription;
+            if(current != null) current.cancel();
+
+            CompletableFuture.runAsync(() -> {
+                synchronized(this) {
+                    delegate.onError(new IllegalStateException("Subscriber fell behind live events;"
+                            + " resume with EventService.tail(nextOffset, generation) of the last received event"));
+                }
+            });
+        }
+
+        @Override
+        public synchronized void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if(failed) subscription.cancel();
+
+            delegate.onSubscribe(subscription);
+        }
+
+        @Override
+        public synchronized void onNext(EventTailPublisher.TailedEvent item) {
+            if(!failed) delegate.onNext(item);
+        }
+
+        @Override
+        public synchronized void onError(Throwable throwable) {
+            if(!failed) delegate.onError(throwable);
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            if(!failed) delegate.onComplete();
+        }
     }
 
     /**
@@ -0,0 +1,300 @@
+package eventlogger.service;
+
+import eventlogger.model.Event;
+import eventlogger.repository.EventRepository;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Видавець подій, що дописуються у файл, на кшталт {@code tail -f}.
+ * <p>
+ * Кожен підписник отримує власний віртуальний потік читання, який йде від заданого зміщення
+ * до кінця файлу, а далі чекає на зміни. Зміни відстежує один спільний {@link WatchService}
+ * на весь процес ({@link ChangeWatcher}): на Linux кожен з них - окремий inotify,
+ * кількість яких на користувача обмежена (типово 128).
+ * Читання йде лише у межах запитаної кількості подій, тож повільний підписник
+ * не змушує нічого буферизувати - непрочитане просто лишається у файлі.
+ * <p>
+ * Зміщення дійсне лише разом з поколінням файлу, в якому воно отримане
+ * ({@link EventRepository.Generation#rewrites()}, росте при кожному повному перезаписі:
+ * {@code compact}, {@code migrate}, видалення всіх подій), тож підписка відновлюється за парою
+ * {@link TailedEvent#nextOffset()} та {@link TailedEvent#generation()}.
+ * Перед кожним читанням перевіряється, що покоління не змінилось, а зміщення - межа рядків
+ * (початок файлу або після переведення рядка). Інакше зміщення вже не вказує
+ * на ту саму подію - підписник отримує {@code onError} і може підписатися заново з потрібного місця.
+ * Видалення окремих подій не зсуває рядки, тож не заважає.
+ */
+public class EventTailPublisher implements Flow.Publisher<EventTailPublisher.TailedEvent> {
+    // Страховка на випадок, якщо WatchService не повідомить про зміну (напр. мережеві ФС)
+    private static final long POLL_INTERVAL_MS = 500;
+
+    private final EventRepository repository;
+    private final long fromOffset;
+    private final long generation;
+
+    /**
+     * Подія разом з її місцем у файлі.
+     * @param event Подія.
+     * @param offset Зміщення початку рядка події.
+     * @param nextOffset Зміщення після події - з нього можна відновити підписку.
+     * @param generation Покоління файлу, в якому дійсні зміщення - передається разом з {@code nextOffset}.
+     */
+    public record TailedEvent(Event event, long offset, long nextOffset, long generation) {}
+
+    /**
+     * @param repository Репозиторій файлу подій.
+     * @param fromOffset Зміщення, з якого почати.
+     * @param generation Покоління файлу, в якому отримано {@code fromOffset}.
+     */
+    public EventTailPublisher(EventRepository repository, long fromOffset, long generation) {
+        if(fromOffset < 0) throw new IllegalArgumentException("Offset must not be negative: " + fromOffset);
+
+        this.repository = repository;
+        this.fromOffset = fromOffset;
+        this.generation = generation;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super TailedEvent> subscriber) {
+        Objects.requireNonNull(subscriber);
+
+        Thread.ofVirtual().name("event-tail").start(new TailSubscription(subscriber));
+    }
+
+    /**
+     * Спільне для всіх підписок стеження за каталогами файлів подій: один {@link WatchService}
+     * і один потік, що після кожної зміни будить підписки, які чекають на нові рядки.
+     * Якщо {@link WatchService} недоступний, підписки просто перевіряють файл кожні {@value #POLL_INTERVAL_MS} мс.
+     */
+    private static final class ChangeWatcher {
+        private static final ChangeWatcher INSTANCE = new ChangeWatcher();
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final Set<Path> directories = ConcurrentHashMap.newKeySet();
+        private WatchService watcher;       // під замком lock, створюється при першій підписці
+        private long version;               // під замком lock, росте з кожною зміною
+
+        /**
+         * Починає стежити за каталогом (повторна реєстрація нічого не робить).
+         */
+        void register(Path directory) throws IOException {
+            if(directories.contains(directory)) return;
+
+            lock.lock();
+            try {
+                if(watcher == null) {
+                    watcher = directory.getFileSystem().newWatchService();
+                    Thread.ofPlatform().daemon().name("event-tail-watcher").start(this::watchLoop);
+                }
+
+                directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.add(directory);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return Поточна версія - передається в {@link #awaitChange(long)}, взята до читання файлу.
+         */
+        long version() {
+            lock.lock();
+            try {
+                return version;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Чекає, доки після версії {@code seen} щось зміниться, але не довше {@value #POLL_INTERVAL_MS} мс.
+         */
+        void awaitChange(long seen) throws InterruptedException {
+            lock.lock();
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL_MS);
+
+                while(version == seen && remaining > 0) {
+                    remaining = changed.awaitNanos(remaining);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void watchLoop() {
+            while(true) {
+                WatchKey key;
+
+                try {
+                    key = watcher.take();
+                } catch(InterruptedException | ClosedWatchServiceException e) {
+                    return;
+                }
+
+                key.pollEvents();
+
+                // Каталог зник - при наступній підписці його зареєструють знову
+                if(!key.reset()) directories.remove((Path) key.watchable());
+
+                lock.lock();
+                try {
+                    version++;
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Підписка одного підписника. Усі сигнали підписнику йдуть з її власного потоку.
+     * Замки - {@link ReentrantLock}, а не {@code synchronized}: очікування в {@code synchronized}
+     * закріплює віртуальний потік за потоком-носієм.
+     */
+    private final class TailSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super TailedEvent> subscriber;
+        private final ReentrantLock signal = new ReentrantLock();
+        private final Condition signalled = signal.newCondition();
+
+        private long demand;                // під замком signal
+        private Throwable pendingError;     // під замком signal
+        private volatile boolean cancelled;
+        private long offset = fromOffset;
+
+        private TailSubscription(Flow.Subscriber<? super TailedEvent> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            signal.lock();
+            try {
+                if(n <= 0) {
+                    pendingError = new IllegalArgumentException("Requested amount must be positive: " + n);
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+                signalled.signalAll();
+            } finally {
+                signal.unlock();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+
+            signal.lock();
+            try {
+                signalled.signalAll();
+            } finally {
+                signal.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            subscriber.onSubscribe(this);
+
+            Path path = Path.of(repository.filePath()).toAbsolutePath();
+            ChangeWatcher watcher = ChangeWatcher.INSTANCE;
+
+            try {
+                watcher.register(path.getParent());
+            } catch(IOException e) {
+                // Без сповіщень про зміни - лише періодична перевірка файлу
+            }
+
+            try {
+                while(awaitDemand()) {
+                    checkOffset();
+
+                    // Версія - до читання, щоб не пропустити зміну посеред нього
+                    long seen = watcher.version();
+                    long previous = offset;
+                    offset = repository.scanFrom(offset, this::deliver);
+
+                    // Нових повних рядків немає - чекаємо змін у файлі
+                    if(offset == previous) watcher.awaitChange(seen);
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch(RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Перевіряє, що зміщення досі вказує на початок запису того самого файлу.
+         */
+        private void checkOffset() {
+            long current = repository.generation().rewrites();
+
+            if(current != generation) {
+                throw new IllegalStateException("Event log was rewritten (generation " + generation + " -> " + current
+                        + "); offset " + offset + " is no longer valid");
+            }
+
+            if(repository.size() < offset) {
+                throw new IllegalStateException("Event log was truncated below offset " + offset);
+            }
+
+            if(!repository.isLineStart(offset)) {
+                throw new IllegalStateException("Offset " + offset + " is not at the start of a record");
+            }
+        }
+
+        /**
+         * Чекає, доки підписник не запросить події.
+         * @return false, якщо підписку скасовано.
+         */
+        private boolean awaitDemand() throws InterruptedException {
+            Throwable error;
+
+            signal.lock();
+            try {
+                while(demand == 0 && pendingError == null && !cancelled) {
+                    signalled.await();
+                }
+                error = pendingError;
+            } finally {
+                signal.unlock();
+            }
+
+            if(error != null) fail(error);
+
+            return !cancelled;
+        }
+
+        private boolean deliver(Event event, long start, long end) {
+            signal.lock();
+            try {
+                if(cancelled || demand == 0) return false;
+                if(demand != Long.MAX_VALUE) demand--;
+            } finally {
+                signal.unlock();
+            }
+
+            subscriber.onNext(new TailedEvent(event, start, end, generation));
+            return true;
+        }
+
+        private void fail(Throwable error) {
+            if(cancelled) return;
+
+            cancelled = true;
+            subscriber.onError(error);
+        }
+    }
+}
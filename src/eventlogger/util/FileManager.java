@@ -2,6 +2,7 @@ package eventlogger.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 
 public class FileManager {
 
@@ -13,6 +14,18 @@ public class FileManager {
      * @return Повний шлях до файлу.
      */
     public static String fileExistenceChecker(String directoryPath, String fileName) {
+        return fileExistenceChecker(directoryPath, fileName, System.out);
+    }
+
+    /**
+     * Те саме, що {@link #fileExistenceChecker(String, String)}, але повідомлення про створення
+     * друкуються у вказаний потік (у неінтерактивному режимі - stderr, щоб не змішувати з виводом команди).
+     * @param directoryPath Шлях до директорії.
+     * @param fileName Ім'я файлу.
+     * @param log Потік для повідомлень.
+     * @return Повний шлях до файлу.
+     */
+    public static String fileExistenceChecker(String directoryPath, String fileName, PrintStream log) {
         String fullPath = directoryPath + File.separator + fileName;
 
         try {
@@ -22,7 +35,7 @@ public class FileManager {
             if(!directory.exists()) {
 
                 if(directory.mkdirs()) {
-                    System.out.println("[+] Directory created: " + directoryPath);
+                    log.println("[+] Directory created: " + directoryPath);
                 } else {
                     throw new RuntimeException("Could not create directory: " + directoryPath);
                 }
@@ -33,7 +46,7 @@ public class FileManager {
 
             if(!file.exists()) {
                 if(file.createNewFile()) {
-                    System.out.println("[+] File created: " + fileName);
+                    log.println("[+] File created: " + fileName);
                 }
             }
 